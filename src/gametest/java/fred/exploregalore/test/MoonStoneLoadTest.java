@@ -0,0 +1,205 @@
+package fred.exploregalore.test;
+
+import com.sun.management.ThreadMXBean;
+import fred.exploregalore.core.BlockList;
+import fred.exploregalore.world.MoonStoneStats;
+import fred.exploregalore.world.MoonStoneWorldManager;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.block.Block;
+import net.minecraft.block.Blocks;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.MovementType;
+import net.minecraft.entity.passive.VillagerEntity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.GameTestException;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A reproducible Moon Stone load scenario, run headless on a dedicated server with Fabric's GameTest runner
+ * (./gradlew runGametest).<br>
+ * It lives in the gametest source set, as its own small mod (see its fabric.mod.json), so that it never ships in the
+ * mod's jar or registers into a production server's GameTest registry.<br>
+ * An N x N floor of Moon Stone is built, and M scripted villagers are spawned on it - half walk back and forth across
+ * the arena, half jump up and down in place, landing from ~5 blocks. After a fixed number of ticks, the server's tick
+ * time percentiles, the Moon Stone work done and the server thread's allocation rate are logged, and the arena and
+ * villagers are removed.<br>
+ * The scenario is set with system properties:
+ * <ul>
+ *     <li>exploregalore.loadTest.arenaSize - N, default 32</li>
+ *     <li>exploregalore.loadTest.entities - M, default 32</li>
+ *     <li>exploregalore.loadTest.ticks - default 600 (at most {@link #TICK_LIMIT} - 20)</li>
+ *     <li>exploregalore.loadTest.maxP95Mspt - the test fails if the 95th percentile tick time is above it, default 50</li>
+ * </ul>
+ */
+public class MoonStoneLoadTest implements FabricGameTest {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * A compile-time constant, as it is used in the {@link GameTest} annotation.
+     */
+    private static final int TICK_LIMIT = 6000;
+    private static final int ARENA_SIZE;
+    private static final int ENTITY_COUNT;
+    private static final int SIMULATED_TICKS;
+    private static final double MAX_P95_MSPT;
+
+    private static final double WALK_SPEED;
+    private static final double JUMP_SPEED;
+    private static final double GRAVITY;
+
+    static {
+        ARENA_SIZE = Math.max(4, Integer.getInteger("exploregalore.loadTest.arenaSize", 32));
+        ENTITY_COUNT = Math.max(1, Integer.getInteger("exploregalore.loadTest.entities", 32));
+        SIMULATED_TICKS = Math.min(Math.max(1, Integer.getInteger("exploregalore.loadTest.ticks", 600)), TICK_LIMIT - 20);
+        MAX_P95_MSPT = Double.parseDouble(System.getProperty("exploregalore.loadTest.maxP95Mspt", "50"));
+
+        WALK_SPEED = 0.2D;
+        JUMP_SPEED = 0.9D;
+        GRAVITY = 0.08D;
+    }
+
+    /**
+     * A villager moved by the test rather than by its AI or by vanilla physics. Moving it with
+     * {@link net.minecraft.entity.Entity#move} still triggers Moon Stone's onSteppedOn and onLandedUpon.
+     */
+    private static final class ScriptedEntity {
+        private final VillagerEntity entity;
+        private final boolean jumping;
+        private double directionX;
+        private double verticalSpeed;
+
+        private ScriptedEntity(VillagerEntity entity, boolean jumping, double directionX) {
+            this.entity = entity;
+            this.jumping = jumping;
+            this.directionX = directionX;
+            this.verticalSpeed = 0.0D;
+        }
+
+        private void tick(double arenaMinX, double arenaMaxX) {
+            double deltaX = 0.0D;
+            if (this.jumping) {
+                this.verticalSpeed = this.entity.isOnGround() ? JUMP_SPEED : (this.verticalSpeed - GRAVITY) * 0.98D;
+            } else {
+                // Bounces off the edges of the arena
+                if ((this.directionX > 0 && this.entity.getX() + WALK_SPEED > arenaMaxX) || (this.directionX < 0 && this.entity.getX() - WALK_SPEED < arenaMinX)) {
+                    this.directionX = -this.directionX;
+                }
+                deltaX = this.directionX * WALK_SPEED;
+                this.verticalSpeed = -GRAVITY;
+            }
+            this.entity.move(MovementType.SELF, new Vec3d(deltaX, this.verticalSpeed, 0.0D));
+        }
+    }
+
+    @GameTest(structureName = EMPTY_STRUCTURE, tickLimit = TICK_LIMIT)
+    public void moonStoneArena(TestContext context) {
+        ServerWorld world = context.getWorld();
+        MinecraftServer server = world.getServer();
+        Random random = new Random(0L);
+
+        // The arena, one block below the entities
+        for (int x = 0; x < ARENA_SIZE; x++) {
+            for (int z = 0; z < ARENA_SIZE; z++) {
+                world.setBlockState(context.getAbsolutePos(new BlockPos(x, 0, z)), BlockList.MOON_STONE.getDefaultState(), Block.NOTIFY_LISTENERS);
+            }
+        }
+
+        BlockPos arenaOrigin = context.getAbsolutePos(BlockPos.ORIGIN);
+        double arenaMinX = arenaOrigin.getX() + 0.5D;
+        double arenaMaxX = arenaOrigin.getX() + ARENA_SIZE - 0.5D;
+
+        ScriptedEntity[] entities = new ScriptedEntity[ENTITY_COUNT];
+        for (int i = 0; i < ENTITY_COUNT; i++) {
+            VillagerEntity villager = context.spawnEntity(EntityType.VILLAGER, new BlockPos(random.nextInt(ARENA_SIZE), 1, random.nextInt(ARENA_SIZE)));
+            villager.setAiDisabled(true);
+            villager.setNoGravity(true);
+            villager.setInvulnerable(true);
+            entities[i] = new ScriptedEntity(villager, i % 2 == 1, random.nextBoolean() ? 1.0D : -1.0D);
+        }
+
+        MoonStoneStats stats = MoonStoneWorldManager.get(world).getStats();
+        long[] startCounters = new long[MoonStoneStats.Counter.values().length];
+        for (MoonStoneStats.Counter counter : MoonStoneStats.Counter.values()) {
+            startCounters[counter.ordinal()] = stats.get(counter);
+        }
+
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long startAllocatedBytes = threadBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        int startServerTick = server.getTicks();
+        long[] tickNanos = new long[SIMULATED_TICKS];
+
+        context.runAtEveryTick(() -> {
+            int elapsedTicks = server.getTicks() - startServerTick;
+            // The previous tick has finished by now, so its length has been recorded
+            if (elapsedTicks >= 1 && elapsedTicks <= SIMULATED_TICKS) {
+                tickNanos[elapsedTicks - 1] = server.lastTickLengths[(server.getTicks() - 1) % server.lastTickLengths.length];
+            }
+            if (elapsedTicks < SIMULATED_TICKS) {
+                for (ScriptedEntity entity : entities) {
+                    entity.tick(arenaMinX, arenaMaxX);
+                }
+            }
+        });
+
+        context.waitAndRun(SIMULATED_TICKS + 1, () -> {
+            double seconds = (System.nanoTime() - startNanos) / 1.0E9D;
+            double allocatedMegabytes = (threadBean.getThreadAllocatedBytes(threadId) - startAllocatedBytes) / (1024.0D * 1024.0D);
+
+            long[] sortedTickNanos = tickNanos.clone();
+            Arrays.sort(sortedTickNanos);
+            double p95Mspt = percentileMillis(sortedTickNanos, 0.95D);
+
+            LOGGER.info("Moon Stone load test: {}x{} arena, {} entities, {} ticks", ARENA_SIZE, ARENA_SIZE, ENTITY_COUNT, SIMULATED_TICKS);
+            LOGGER.info("  MSPT p50 {} / p95 {} / p99 {} / max {}",
+                    String.format("%.3f", percentileMillis(sortedTickNanos, 0.5D)),
+                    String.format("%.3f", p95Mspt),
+                    String.format("%.3f", percentileMillis(sortedTickNanos, 0.99D)),
+                    String.format("%.3f", percentileMillis(sortedTickNanos, 1.0D)));
+            for (MoonStoneStats.Counter counter : MoonStoneStats.Counter.values()) {
+                long total = stats.get(counter) - startCounters[counter.ordinal()];
+                LOGGER.info("  {}: {} ({}/tick)", counter.getLabel(), total, String.format("%.2f", (double) total / SIMULATED_TICKS));
+            }
+            LOGGER.info("  Server thread allocation: {} MB ({} MB/s)", String.format("%.1f", allocatedMegabytes), String.format("%.1f", allocatedMegabytes / seconds));
+
+            clearArena(context, entities);
+            if (p95Mspt > MAX_P95_MSPT) {
+                throw new GameTestException(String.format("95th percentile tick time %.3fms is above %.3fms", p95Mspt, MAX_P95_MSPT));
+            }
+            context.complete();
+        });
+    }
+
+    /**
+     * Removes the arena and its villagers. The test runs on {@link FabricGameTest#EMPTY_STRUCTURE}, whose bounds (which
+     * the GameTest runner clears) are much smaller than the arena, so the test cleans up after itself.
+     */
+    private static void clearArena(TestContext context, ScriptedEntity[] entities) {
+        for (ScriptedEntity entity : entities) {
+            entity.entity.discard();
+        }
+        ServerWorld world = context.getWorld();
+        for (int x = 0; x < ARENA_SIZE; x++) {
+            for (int z = 0; z < ARENA_SIZE; z++) {
+                world.setBlockState(context.getAbsolutePos(new BlockPos(x, 0, z)), Blocks.AIR.getDefaultState(), Block.NOTIFY_LISTENERS);
+            }
+        }
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        int index = Math.min(sortedNanos.length - 1, Math.max(0, (int) Math.ceil(percentile * sortedNanos.length) - 1));
+        return sortedNanos[index] / 1.0E6D;
+    }
+}
@@ -0,0 +1,26 @@
+package fred.exploregalore.benchmark;
+
+import fred.exploregalore.core.BlockList;
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+
+/**
+ * Initializes just enough of the game for the benchmarks - the registries and the mod's blocks - without launching a
+ * client or server. Mixins are not applied, so nothing that needs a world can be benchmarked directly.
+ */
+public final class BenchmarkBootstrap {
+
+    private static boolean initialized = false;
+
+    private BenchmarkBootstrap() {
+    }
+
+    public static synchronized void initialize() {
+        if (!initialized) {
+            SharedConstants.createGameVersion();
+            Bootstrap.initialize();
+            BlockList.initalizeAndRegister();
+            initialized = true;
+        }
+    }
+}
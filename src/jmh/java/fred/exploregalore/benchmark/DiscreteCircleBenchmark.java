@@ -0,0 +1,78 @@
+package fred.exploregalore.benchmark;
+
+import fred.exploregalore.util.math.DiscreteCircle;
+import fred.exploregalore.util.math.DiscreteSphere;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterating every ring of a ripple, the way {@link fred.exploregalore.world.MoonStoneRippleScheduler} does over a
+ * ripple's lifetime.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DiscreteCircleBenchmark {
+
+    @Param({"8", "16", "64"})
+    public int maxRadius;
+
+    private final BlockPos center = new BlockPos(100, 64, -100);
+    private final BlockPos.Mutable mutablePos = new BlockPos.Mutable();
+
+    @Benchmark
+    public void iteratePackedOffsets(Blackhole blackhole) {
+        int centerX = this.center.getX();
+        int centerZ = this.center.getZ();
+        for (int ring = 0; ring <= this.maxRadius; ring++) {
+            for (int i = DiscreteCircle.ringStart(ring), end = DiscreteCircle.ringEnd(ring); i < end; i++) {
+                long offset = DiscreteCircle.OFFSETS[i];
+                blackhole.consume(BlockPos.asLong(centerX + DiscreteCircle.unpackX(offset), this.center.getY(), centerZ + DiscreteCircle.unpackZ(offset)));
+            }
+        }
+    }
+
+    @Benchmark
+    public void iterateMutablePositions(Blackhole blackhole) {
+        for (int ring = 0; ring <= this.maxRadius; ring++) {
+            for (int i = DiscreteCircle.ringStart(ring), end = DiscreteCircle.ringEnd(ring); i < end; i++) {
+                blackhole.consume(DiscreteCircle.setToPoint(this.mutablePos, this.center, i).asLong());
+            }
+        }
+    }
+
+    @Benchmark
+    public void getAbsolutePositions(Blackhole blackhole) {
+        for (int ring = 0; ring <= this.maxRadius; ring++) {
+            blackhole.consume(DiscreteCircle.getAbsolutePositions(this.center, ring));
+        }
+    }
+
+    @Benchmark
+    public void iterateSphereShells(Blackhole blackhole) {
+        int maxShell = Math.min(this.maxRadius, DiscreteSphere.MAX_RADIUS);
+        for (int shell = 0; shell <= maxShell; shell++) {
+            for (int i = DiscreteSphere.shellStart(shell), end = DiscreteSphere.shellEnd(shell); i < end; i++) {
+                long offset = DiscreteSphere.OFFSETS[i];
+                blackhole.consume(BlockPos.asLong(this.center.getX() + DiscreteSphere.unpackX(offset),
+                        this.center.getY() + DiscreteSphere.unpackY(offset),
+                        this.center.getZ() + DiscreteSphere.unpackZ(offset)));
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package fred.exploregalore.benchmark;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import fred.exploregalore.world.MoonStoneMotionTracker;
+import fred.exploregalore.world.MoonStoneOccupancyIndex;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.entity.decoration.ArmorStandEntity;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MoonStoneBlock#isEntityWalkingServer} and {@link MoonStoneBlock#anyWalkingEntityOnTop} over a crowd of
+ * entities, through the real {@link MoonStoneMotionTracker} and {@link MoonStoneOccupancyIndex}.<br>
+ * The tracker only needs the world time, so it runs without a world. The entities are armor stands created without a
+ * world (living entities that don't need one to be constructed), moved by hand between the tracker's ticks.<br>
+ * To see what the occupancy lookups allocate, run with the GC profiler and read {@code gc.alloc.rate.norm}:
+ * <pre>./gradlew jmh -PjmhArgs="MoonStoneWalkingBenchmark.anyWalkingEntityOnTop -prof gc"</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoonStoneWalkingBenchmark {
+
+    @Param({"16", "1024"})
+    public int entityCount;
+
+    private LivingEntity[] entities;
+    private MoonStoneMotionTracker motionTracker;
+    private MoonStoneOccupancyIndex occupancyIndex;
+    /**
+     * The blocks checked for a walking entity - under each entity, and as many random blocks around them.
+     */
+    private BlockPos[] queriedPositions;
+    private long time;
+
+    @Setup
+    public void setup() {
+        BenchmarkBootstrap.initialize();
+        Random random = new Random(0L);
+        this.entities = new LivingEntity[this.entityCount];
+        this.motionTracker = new MoonStoneMotionTracker();
+
+        // Spread out over a square that fits the crowd with a block or so between entities
+        int areaSize = (int) Math.ceil(Math.sqrt(this.entityCount)) * 2;
+        for (int i = 0; i < this.entityCount; i++) {
+            LivingEntity entity = new ArmorStandEntity(EntityType.ARMOR_STAND, null);
+            entity.setPosition(random.nextDouble() * areaSize, 64.0D, random.nextDouble() * areaSize);
+            entity.setOnGround(random.nextBoolean());
+            entity.fallDistance = random.nextInt(4) == 0 ? random.nextFloat() * 4.0F : 0.0F;
+            this.entities[i] = entity;
+            this.motionTracker.track(entity, 0L);
+        }
+        this.motionTracker.tick(0L);
+
+        // Half of the crowd moves during the tick, so that the tracker sees them walking
+        for (LivingEntity entity : this.entities) {
+            if (random.nextBoolean()) {
+                entity.setPosition(entity.getX() + random.nextDouble() * 0.2D, entity.getY(), entity.getZ() + random.nextDouble() * 0.2D);
+            }
+        }
+        this.motionTracker.tick(1L);
+
+        this.occupancyIndex = new MoonStoneOccupancyIndex(this.motionTracker);
+        this.queriedPositions = new BlockPos[this.entityCount * 2];
+        for (int i = 0; i < this.entityCount; i++) {
+            this.queriedPositions[i * 2] = this.entities[i].getBlockPos().down();
+            this.queriedPositions[i * 2 + 1] = new BlockPos(random.nextInt(areaSize), 63, random.nextInt(areaSize));
+        }
+        // Built once here, so that anyWalkingEntityOnTop measures the lookups alone
+        this.time = 1L;
+        this.occupancyIndex.isOccupied(BlockPos.ORIGIN, this.time);
+    }
+
+    /**
+     * The check made whenever an entity steps on unlit Moon Stone.
+     */
+    @Benchmark
+    public int isEntityWalking() {
+        int walking = 0;
+        for (LivingEntity entity : this.entities) {
+            if (this.motionTracker.isWalking(entity)) {
+                walking++;
+            }
+        }
+        return walking;
+    }
+
+    /**
+     * The check made when a lit block's extinguish deadline is reached, with the tick's index already built.
+     */
+    @Benchmark
+    public int anyWalkingEntityOnTop() {
+        int occupied = 0;
+        for (BlockPos pos : this.queriedPositions) {
+            if (this.occupancyIndex.isOccupied(pos, this.time)) {
+                occupied++;
+            }
+        }
+        return occupied;
+    }
+
+    /**
+     * The same checks on a new tick each time, so the index is rebuilt from the tracked entities first.
+     */
+    @Benchmark
+    public int anyWalkingEntityOnTopNewTick() {
+        this.time++;
+        return anyWalkingEntityOnTop();
+    }
+
+    /**
+     * Saving the motion of every tracked entity, as done at the start of each world tick. The time stays the same, so
+     * no entity is dropped from the tracker.
+     */
+    @Benchmark
+    public MoonStoneMotionTracker tickMotionTracker() {
+        this.motionTracker.tick(1L);
+        return this.motionTracker;
+    }
+}
@@ -0,0 +1,94 @@
+package fred.exploregalore.benchmark;
+
+import fred.exploregalore.blocks.LivingLilyStemBlock;
+import fred.exploregalore.core.BlockList;
+import fred.exploregalore.util.shape.RotatableVoxelShapeGroup;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.ShapeContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.shape.VoxelShape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building {@link RotatableVoxelShapeGroup}s, and looking up the Living Lily Stem's shapes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VoxelShapeBenchmark {
+
+    /**
+     * The boxes of the Living Lily Stem's attached top shape - its most complex shape.
+     */
+    private static final Box[] ATTACHED_TOP_BOXES = {
+            new Box(7, 13, 0, 9, 14, 3),
+            new Box(7, 0, 7, 9, 11, 9),
+            new Box(7, 10, 5, 9, 12, 7),
+            new Box(7, 12, 3, 9, 13, 5)
+    };
+
+    private static final Direction[] HORIZONTAL_DIRECTIONS = {Direction.NORTH, Direction.EAST, Direction.SOUTH, Direction.WEST};
+
+    private RotatableVoxelShapeGroup shapeGroup;
+    private BlockState[] lilyStemStates;
+
+    @Setup
+    public void setup() {
+        BenchmarkBootstrap.initialize();
+        this.shapeGroup = new RotatableVoxelShapeGroup(ATTACHED_TOP_BOXES);
+        this.lilyStemStates = BlockList.LIVING_LILY_STEM.getStateManager().getStates().toArray(new BlockState[0]);
+    }
+
+    @Benchmark
+    public RotatableVoxelShapeGroup constructShapeGroup() {
+        return new RotatableVoxelShapeGroup(ATTACHED_TOP_BOXES);
+    }
+
+    @Benchmark
+    public void getShapeFromOrientation(Blackhole blackhole) {
+        for (Direction direction : HORIZONTAL_DIRECTIONS) {
+            blackhole.consume(this.shapeGroup.getShapeFromOrientation(direction));
+        }
+    }
+
+    /**
+     * Every state of the block, as when a chunk full of stems is meshed or collided against - the current path.
+     */
+    @Benchmark
+    public void lilyStemOutlineShape(Blackhole blackhole) {
+        LivingLilyStemBlock block = (LivingLilyStemBlock) BlockList.LIVING_LILY_STEM;
+        for (BlockState state : this.lilyStemStates) {
+            VoxelShape shape = block.getOutlineShape(state, null, BlockPos.ORIGIN, ShapeContext.absent());
+            blackhole.consume(shape);
+        }
+    }
+
+    /**
+     * The same lookups, through the switch on the stem type and the property reads that the block used to do on every
+     * call - for comparison with {@link #lilyStemOutlineShape}.
+     */
+    @Benchmark
+    public void lilyStemOutlineShapeFromProperties(Blackhole blackhole) {
+        for (BlockState state : this.lilyStemStates) {
+            RotatableVoxelShapeGroup shapeGroup = LivingLilyStemBlock.getShapeGroup(state.get(LivingLilyStemBlock.LILY_STEM_TYPE));
+            blackhole.consume(shapeGroup.getShapeFromOrientation(state.get(LivingLilyStemBlock.FACING)));
+        }
+    }
+}
@@ -1,13 +1,25 @@
 package fred.exploregalore;
 
+import fred.exploregalore.command.ExploreGaloreCommand;
 import fred.exploregalore.core.BlockList;
 import fred.exploregalore.core.ItemList;
+import fred.exploregalore.network.ExploreGaloreNetworking;
+import fred.exploregalore.util.shape.VoxelShapeCache;
+import fred.exploregalore.world.MoonStoneWorldManager;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v1.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 
 public class ExploreGalore implements ModInitializer {
 
 	public static final String MOD_ID = "exploregalore";
+	private static final Logger LOGGER = LogManager.getLogger();
 
 
 
@@ -17,8 +29,29 @@ public class ExploreGalore implements ModInitializer {
 		// However, some things (like resources) may still be uninitialized.
 		// Proceed with mild caution.
 
+		// Loading the blocks builds all of their VoxelShapes - timed, as it is part of the server's startup
+		long startNanos = System.nanoTime();
 		ItemList.initalizeAndRegister();
 		BlockList.initalizeAndRegister();
+		LOGGER.info("Registered blocks and items in {} ms, with {} VoxelShapes built",
+				String.format("%.2f", (System.nanoTime() - startNanos) / 1_000_000.0D), VoxelShapeCache.size());
+
+		ServerTickEvents.START_WORLD_TICK.register(world -> MoonStoneWorldManager.get(world).tickStart());
+		ServerTickEvents.END_WORLD_TICK.register(world -> MoonStoneWorldManager.get(world).tick());
+		ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> {
+			MoonStoneWorldManager manager = MoonStoneWorldManager.get(world);
+			manager.getPresenceIndex().loadChunk(chunk);
+			manager.getChunkPersistence().loadChunk(chunk);
+		});
+		ServerChunkEvents.CHUNK_UNLOAD.register((world, chunk) -> {
+			MoonStoneWorldManager manager = MoonStoneWorldManager.get(world);
+			manager.getPresenceIndex().unloadChunk(chunk.getPos());
+			manager.getChunkPersistence().unloadChunk(chunk.getPos());
+		});
+		ServerEntityEvents.ENTITY_UNLOAD.register((entity, world) -> MoonStoneWorldManager.get(world).getMotionTracker().untrack(entity));
+		ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> ExploreGaloreNetworking.sendMoonStoneLighting(sender));
+
+		CommandRegistrationCallback.EVENT.register((dispatcher, dedicated) -> ExploreGaloreCommand.register(dispatcher));
 
 
 
@@ -4,7 +4,9 @@ import fred.exploregalore.blocks.enums.LilyStemType;
 import fred.exploregalore.core.BlockList;
 import fred.exploregalore.state.property.ExploreGaloreProperties;
 import fred.exploregalore.tag.ExploreGaloreBlockTags;
+import fred.exploregalore.util.shape.GeneratedShapes;
 import fred.exploregalore.util.shape.RotatableVoxelShapeGroup;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import net.minecraft.block.*;
 import net.minecraft.fluid.FluidState;
 import net.minecraft.fluid.Fluids;
@@ -15,7 +17,6 @@ import net.minecraft.state.property.DirectionProperty;
 import net.minecraft.state.property.EnumProperty;
 import net.minecraft.state.property.Properties;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Box;
 import net.minecraft.util.math.Direction;
 import net.minecraft.util.shape.VoxelShape;
 import net.minecraft.util.shape.VoxelShapes;
@@ -59,6 +60,12 @@ public class LivingLilyStemBlock extends PlantBlock implements Waterloggable {
     public static final RotatableVoxelShapeGroup ATTACHED_MIDDLE_SHAPE;
     public static final RotatableVoxelShapeGroup ATTACHED_TOP_SHAPE;
 
+    /**
+     * The outline shape of every state of the block, resolved once when the block is created. Keyed by identity, so a
+     * lookup is an identity hash and (nearly always) a single probe of the map's arrays - no equals or property reads.
+     */
+    private final Reference2ObjectOpenHashMap<BlockState, VoxelShape> outlineShapes;
+
 
     public LivingLilyStemBlock(Settings settings) {
         super(settings);
@@ -66,6 +73,28 @@ public class LivingLilyStemBlock extends PlantBlock implements Waterloggable {
                 .with(FACING, Direction.NORTH)
                 .with(LILY_STEM_TYPE, LilyStemType.DEFAULT)
                 .with(WATERLOGGED, false));
+        this.outlineShapes = this.createOutlineShapes();
+    }
+
+    /**
+     * Resolves the shape of each state, so that {@link #getOutlineShape} (and the collision shape, which is the same)
+     * is a single lookup rather than a switch and two property reads per query.
+     */
+    private Reference2ObjectOpenHashMap<BlockState, VoxelShape> createOutlineShapes() {
+        Reference2ObjectOpenHashMap<BlockState, VoxelShape> shapes = new Reference2ObjectOpenHashMap<>(this.stateManager.getStates().size());
+        for (BlockState state : this.stateManager.getStates()) {
+            shapes.put(state, getShapeGroup(state.get(LILY_STEM_TYPE)).getShapeFromOrientation(state.get(FACING)));
+        }
+        return shapes;
+    }
+
+    public static RotatableVoxelShapeGroup getShapeGroup(LilyStemType lilyStemType) {
+        return switch (lilyStemType) {
+            case BASE -> BASE_SHAPE;
+            case DEFAULT -> DEFAULT_SHAPE;
+            case ATTACHED_MIDDLE -> ATTACHED_MIDDLE_SHAPE;
+            case ATTACHED_TOP -> ATTACHED_TOP_SHAPE;
+        };
     }
 
     @Override
@@ -75,12 +104,7 @@ public class LivingLilyStemBlock extends PlantBlock implements Waterloggable {
 
     @Override
     public VoxelShape getOutlineShape(BlockState state, BlockView world, BlockPos pos, ShapeContext context) {
-        return switch (state.get(LILY_STEM_TYPE)) {
-            case BASE -> BASE_SHAPE.getShapeFromOrientation(state.get(FACING));
-            case DEFAULT -> DEFAULT_SHAPE.getShapeFromOrientation(state.get(FACING));
-            case ATTACHED_MIDDLE -> ATTACHED_MIDDLE_SHAPE.getShapeFromOrientation(state.get(FACING));
-            case ATTACHED_TOP -> ATTACHED_TOP_SHAPE.getShapeFromOrientation(state.get(FACING));
-        };
+        return this.outlineShapes.get(state);
     }
 
     /**
@@ -176,19 +200,11 @@ public class LivingLilyStemBlock extends PlantBlock implements Waterloggable {
         LILY_STEM_TYPE = ExploreGaloreProperties.LILY_STEM_TYPE;
         WATERLOGGED = Properties.WATERLOGGED;
 
-        // Initializing the VoxelShapes. BlockBench is used for obtaining VoxelShapes coordinates.
-        BASE_SHAPE = new RotatableVoxelShapeGroup(
-                new Box(7, 2, 7, 9, 16, 9),
-                new Box(2, 0, 2, 14, 2, 14));
-        DEFAULT_SHAPE = new RotatableVoxelShapeGroup(
-                new Box(7, 0, 7, 9, 16, 9));
-        ATTACHED_MIDDLE_SHAPE = new RotatableVoxelShapeGroup(
-                new Box(7, 1, 0, 9, 2, 7),
-                new Box(7, 0, 7, 9, 16, 9));
-        ATTACHED_TOP_SHAPE = new RotatableVoxelShapeGroup(
-                new Box(7, 13, 0, 9, 14, 3),
-                new Box(7, 0, 7, 9, 11, 9),
-                new Box(7, 10, 5, 9, 12, 7),
-                new Box(7, 12, 3, 9, 13, 5));
+        // Initializing the VoxelShapes. The boxes are generated from the block models (made with BlockBench) at build
+        // time, already rotated - see the generateShapes task in build.gradle.
+        BASE_SHAPE = RotatableVoxelShapeGroup.fromHorizontalBoxes(GeneratedShapes.LILY_STEM_BASE);
+        DEFAULT_SHAPE = RotatableVoxelShapeGroup.fromHorizontalBoxes(GeneratedShapes.LILY_STEM_DEFAULT);
+        ATTACHED_MIDDLE_SHAPE = RotatableVoxelShapeGroup.fromHorizontalBoxes(GeneratedShapes.LILY_STEM_ATTACHED_MIDDLE);
+        ATTACHED_TOP_SHAPE = RotatableVoxelShapeGroup.fromHorizontalBoxes(GeneratedShapes.LILY_STEM_ATTACHED_TOP);
     }
 }
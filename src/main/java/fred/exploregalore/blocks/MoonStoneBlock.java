@@ -1,7 +1,15 @@
 package fred.exploregalore.blocks;
 
+import fred.exploregalore.core.ExploreGaloreConfig;
 import fred.exploregalore.util.math.DiscreteCircle;
-import fred.exploregalore.util.EntityPrevPosAccess;
+import fred.exploregalore.world.MoonStoneExtinguishDeadlines;
+import fred.exploregalore.world.MoonStoneMotionTracker;
+import fred.exploregalore.world.MoonStoneOccupancyIndex;
+import fred.exploregalore.world.MoonStonePresenceIndex;
+import fred.exploregalore.world.MoonStoneRippleScheduler;
+import fred.exploregalore.world.MoonStoneSectionWriter;
+import fred.exploregalore.world.MoonStoneStats;
+import fred.exploregalore.world.MoonStoneWorldManager;
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.entity.Entity;
@@ -11,12 +19,9 @@ import net.minecraft.state.StateManager;
 import net.minecraft.state.property.BooleanProperty;
 import net.minecraft.state.property.Properties;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Box;
 import net.minecraft.world.World;
 
-import java.util.List;
 import java.util.Random;
-import java.util.stream.Collectors;
 
 
 /**
@@ -26,7 +31,7 @@ import java.util.stream.Collectors;
  *     <li>Detect when an entity steps on a Moon Stone Block.</li>
  *     <li>Light up the block.</li>
  *     <li>In outward concentric circles, schedule for rings of Moon Stone blocks to light up surrounding the block that
- *     was stepped on.</li>
+ *     was stepped on. A single ripple is scheduled per landing (see {@link MoonStoneRippleScheduler}).</li>
  *     <li>After X seconds, check for if there is a <i>moving</i> entity still on the block. If so, keep it lit and follow
  *     step (3) for lighting up the surrounding blocks.
  *     If there is no moving entity on the block, make the block dark again.</li>
@@ -35,16 +40,16 @@ import java.util.stream.Collectors;
  */
 public class MoonStoneBlock extends Block {
 
-    /**
-     * Bounding box of a block 1 above the desired block - used to detect what entities are standing on a block.
-     */
-    private static final Box ONE_BLOCK_ABOVE_BOX;
     /**
      * Error for comparing doubles used in movement.
      * Ex: To detect if an entity has moved, we can compare prevX with getX() to see if they are the same. Due to some
      * discreptancies in movement mechanics, we make the error quite large.
      */
     public static final double ERROR_EPSILON;
+    /**
+     * ERROR_EPSILON squared - compared against the squared horizontal speed of an entity.
+     */
+    private static final double ERROR_EPSILON_SQUARED;
 
     /**
      * <ol start = "1">
@@ -61,8 +66,8 @@ public class MoonStoneBlock extends Block {
     public static final int MIN_LIGHT_RADIUS;
 
     static {
-        ONE_BLOCK_ABOVE_BOX = new Box(0, 1, 0, 1, 2, 1);
         ERROR_EPSILON = 0.02D;
+        ERROR_EPSILON_SQUARED = ERROR_EPSILON * ERROR_EPSILON;
         LIT = Properties.LIT;
         LIT_TIME = 40;
         MIN_LIGHT_RADIUS = 1;
@@ -93,6 +98,31 @@ public class MoonStoneBlock extends Block {
     }
 
 
+    /**
+     * Records the new Moon Stone block in the world's {@link MoonStonePresenceIndex}, so that ripples can reach it.
+     */
+    @Override
+    public void onBlockAdded(BlockState state, World world, BlockPos pos, BlockState oldState, boolean notify) {
+        if (!world.isClient && !oldState.isOf(this)) {
+            MoonStoneWorldManager.get((ServerWorld) world).getPresenceIndex().add(pos);
+        }
+        super.onBlockAdded(state, world, pos, oldState, notify);
+    }
+
+    /**
+     * Removes the Moon Stone block from the world's {@link MoonStonePresenceIndex} once it's broken or replaced.
+     */
+    @Override
+    public void onStateReplaced(BlockState state, World world, BlockPos pos, BlockState newState, boolean moved) {
+        if (!world.isClient && !newState.isOf(this)) {
+            MoonStoneWorldManager manager = MoonStoneWorldManager.get((ServerWorld) world);
+            manager.getPresenceIndex().remove(pos);
+            manager.getExtinguishDeadlines().remove(pos);
+        }
+        super.onStateReplaced(state, world, pos, newState, moved);
+    }
+
+
     /**
      * <ol start = "4">
      * <li>
@@ -105,22 +135,21 @@ public class MoonStoneBlock extends Block {
     public void onSteppedOn(World world, BlockPos pos, BlockState steppedOnBlockState, Entity entity) {
 
 
-        if ((!world.isClient) && entity instanceof LivingEntity) {
+        if ((!world.isClient) && entity instanceof LivingEntity livingEntity) {
+            ServerWorld serverWorld = (ServerWorld) world;
 
+            // Entities are only tracked (to check if they are walking) while they are near Moon Stone
+            MoonStoneWorldManager.get(serverWorld).getMotionTracker().track(livingEntity, world.getTime());
 
             boolean isLit = steppedOnBlockState.get(LIT);
             if (!isLit) {
 
                 // Walking on the ground
-                if (isEntityWalkingServer(entity)) {
+                if (isEntityWalkingServer(serverWorld, entity)) {
                     // maxDistFromCenter is one - just the singular block
-                    lightBlocksInRadiatingCircles(steppedOnBlockState, world, pos, MoonStoneBlock.MIN_LIGHT_RADIUS);
+                    lightBlocksInRadiatingCircles(serverWorld, pos, MoonStoneBlock.MIN_LIGHT_RADIUS);
                 }
             }
-
-            // We use some custom prevX/Y/Z variables (via mixin) to save the previous pos of entities - this is due
-            // to the player entity's prevX/Y/Z variables not working serverside
-            ((EntityPrevPosAccess) entity).savePrevPos();
         }
         super.onSteppedOn(world, pos, steppedOnBlockState, entity);
     }
@@ -146,15 +175,13 @@ public class MoonStoneBlock extends Block {
     public void onLandedUpon(World world, BlockState steppedOnBlockState, BlockPos pos, Entity entity, float fallDistance) {
 
 
-        if ((!world.isClient) && entity instanceof LivingEntity) {
-
+        if ((!world.isClient) && entity instanceof LivingEntity livingEntity) {
+            MoonStoneWorldManager.get((ServerWorld) world).getMotionTracker().track(livingEntity, world.getTime());
 
             //if (!steppedOnBlockState.get(LIT)) {
-                int radiatingCircleRadius = (fallDistance * 0.5F) > (DiscreteCircle.MAX_RADIUS - 1) ? DiscreteCircle.MAX_RADIUS : (int) (fallDistance * 0.5F) + 2;
-                lightBlocksInRadiatingCircles(steppedOnBlockState, world, pos, radiatingCircleRadius);
+                int radiatingCircleRadius = Math.min((int) (fallDistance * 0.5F) + 2, DiscreteCircle.RING_COUNT);
+                lightBlocksInRadiatingCircles((ServerWorld) world, pos, radiatingCircleRadius);
           //  }
-
-            ((EntityPrevPosAccess) entity).savePrevPos();
         }
         super.onLandedUpon(world, steppedOnBlockState, pos, entity, fallDistance);
     }
@@ -162,105 +189,136 @@ public class MoonStoneBlock extends Block {
 
 
     /**
-     * Lights up the steppedOnBlock and its surrounding blocks in a radiating circle effect.
+     * Lights up the steppedOnBlock and its surrounding blocks in a radiating circle effect.<br>
+     * The surrounding blocks are lit one 'ring' at a time by the world's {@link MoonStoneRippleScheduler}, which stores
+     * a single ripple rather than one scheduled tick per block. The rings are spherical shells if
+     * {@link ExploreGaloreConfig#MOON_STONE_SPHERICAL_RIPPLES} is enabled.
      *
-     * @param steppedOnBlockState block that was stepped on - that triggers the 'blooming' effect
+     * @param centralBlockPos the block that was stepped on - that triggers the 'blooming' effect
      */
-    private void lightBlocksInRadiatingCircles(BlockState steppedOnBlockState, World world, BlockPos centralBlockPos, int maxDistFromCenter) {
-        /* Lighting up the initial block */
-        // Light the block ...
-        light(steppedOnBlockState, world, centralBlockPos);
-        // ... And then set for the block to go out after X ticks
-        world.getBlockTickScheduler().schedule(centralBlockPos, this, MoonStoneBlock.LIT_TIME);
+    private void lightBlocksInRadiatingCircles(ServerWorld world, BlockPos centralBlockPos, int maxDistFromCenter) {
+        MoonStoneRippleScheduler rippleScheduler = MoonStoneWorldManager.get(world).getRippleScheduler();
 
-        /* Lighting up the surrounding blocks, one 'ring' at a time with delay for visual effect. */
+        /* Lighting up the initial block (at the end of the tick, merged with any other ripples), which then sets for
+         * the block to go out after X ticks */
+        rippleScheduler.queueLight(centralBlockPos);
 
-        int delay = 1;
-
-        for (int radius = MoonStoneBlock.MIN_LIGHT_RADIUS; radius <= maxDistFromCenter; radius++) {
-            for (int[] point : DiscreteCircle.POINTS[radius - 1]) {
-                world.getBlockTickScheduler().schedule(centralBlockPos.add(point[0], 0, point[1]), this, radius * delay);
-
-            }
+        /* Lighting up the surrounding blocks, one 'ring' at a time with delay for visual effect. */
+        // The first ring is the central block itself, so there is nothing more to light for the minimum radius.
+        if (maxDistFromCenter > MoonStoneBlock.MIN_LIGHT_RADIUS) {
+            rippleScheduler.startRipple(centralBlockPos, maxDistFromCenter - 1, ExploreGaloreConfig.MOON_STONE_SPHERICAL_RIPPLES);
         }
     }
 
+    /**
+     * Lights the block, and sets it to go out after {@link #LIT_TIME} ticks - see {@link MoonStoneExtinguishDeadlines}.
+     *
+     * @param pos           may be mutable - it is only read, never kept
+     * @param sendToClients false if the clients predict the light themselves (as part of a ripple), and the block will
+     *                      be sent to them later
+     */
+    public void lightAndScheduleExtinguish(ServerWorld world, BlockPos pos, boolean sendToClients) {
+        light(world, pos, sendToClients);
+        MoonStoneWorldManager manager = MoonStoneWorldManager.get(world);
+        manager.getExtinguishDeadlines().set(pos, world.getTime() + MoonStoneBlock.LIT_TIME);
+        manager.getStats().increment(MoonStoneStats.Counter.BLOCKS_SCHEDULED);
+    }
+
 
     /**
      * <ol start="5">
      *     <li>
-     *         The scheduled tick for the block to extinguish its light.<br>
+     *         The block's extinguish deadline has been reached.<br>
      *         Before we extinguish its light, we check for if there is an entity on the block, and if the entity is moving.
+     *         If so, the deadline is pushed back by another {@link #LIT_TIME} ticks.
      *     </li>
      * </ol>
+     *
+     * @param pos may be mutable - it is only read, never kept
+     * @see MoonStoneExtinguishDeadlines
      */
-    @Override
-    public void scheduledTick(BlockState state, ServerWorld world, BlockPos pos, Random random) {
-
-        if (!world.isClient()) {
-            if (state.get(LIT)) {
-                boolean hasWalkingEntitiesOnTop = !(getWalkingEntitiesOnTop(world, pos).isEmpty());
+    public void onExtinguishDeadline(ServerWorld world, BlockPos pos, BlockState state) {
+        if (!isLit(state)) {
+            return;
+        }
 
-                if (hasWalkingEntitiesOnTop) {
-                    world.getBlockTickScheduler().schedule(pos, this, MoonStoneBlock.LIT_TIME);
-                } else {
-                    extinguish(state, world, pos);
-                }
-            } else {
-                light(state, world, pos);
-                world.getBlockTickScheduler().schedule(pos, this, MoonStoneBlock.LIT_TIME);
-            }
+        MoonStoneWorldManager manager = MoonStoneWorldManager.get(world);
+        MoonStoneStats stats = manager.getStats();
+        stats.increment(MoonStoneStats.Counter.SCHEDULED_TICKS);
 
+        long queryStartNanos = System.nanoTime();
+        boolean occupied = anyWalkingEntityOnTop(world, pos);
+        stats.increment(MoonStoneStats.Counter.ENTITY_QUERIES);
+        stats.add(MoonStoneStats.Counter.ENTITY_QUERY_NANOS, System.nanoTime() - queryStartNanos);
 
+        if (occupied) {
+            manager.getExtinguishDeadlines().set(pos, world.getTime() + MoonStoneBlock.LIT_TIME);
+            stats.increment(MoonStoneStats.Counter.RESCHEDULES);
+        } else {
+            extinguish(world, pos);
         }
+    }
 
+    /**
+     * Moon Stone no longer schedules ticks - this only handles the ticks saved in chunks from before the deadlines
+     * were kept in {@link MoonStoneExtinguishDeadlines}. A lit block without a deadline is handled as if its deadline
+     * had been reached.
+     */
+    @Override
+    public void scheduledTick(BlockState state, ServerWorld world, BlockPos pos, Random random) {
+        if (isLit(state) && !MoonStoneWorldManager.get(world).getExtinguishDeadlines().contains(pos)) {
+            onExtinguishDeadline(world, pos, state);
+        }
     }
 
 
     /**
-     * Sets the LIT state of the block to true. When rendered, the block will light up.
+     * Sets the LIT state of the block to true. When rendered, the block will light up.<br>
+     * The change is batched with all other Moon Stone changes this tick and written at the end of the tick.
+     *
+     * @see MoonStoneSectionWriter
      */
-    private void light(BlockState state, World world, BlockPos pos) {
-        world.setBlockState(pos, state.with(LIT, true));
+    private void light(ServerWorld world, BlockPos pos, boolean sendToClients) {
+        MoonStoneWorldManager.get(world).getSectionWriter().queue(pos, true, sendToClients);
     }
 
-    private void extinguish(BlockState state, World world, BlockPos pos) {
-        world.setBlockState(pos, state.with(LIT, false));
+    private void extinguish(ServerWorld world, BlockPos pos) {
+        MoonStoneWorldManager manager = MoonStoneWorldManager.get(world);
+        manager.getSectionWriter().queue(pos, false);
+        manager.getExtinguishDeadlines().remove(pos);
     }
 
     /**
-     * Gets all the entities on top of the current (MoonStone) block, and filters only the ones that are walking.
+     * Checks if a walking living entity is standing on top of the block. Used to decide whether a lit block should stay
+     * lit.<br>
+     * The check is a single lookup into the world's {@link MoonStoneOccupancyIndex}, which is built once per tick - no
+     * entities are queried per call.
      *
-     * @return a list of all the entities that are walking on top of the block.
+     * @return true if at least one walking entity is on top of the block
      */
-    private List<Entity> getWalkingEntitiesOnTop(World world, BlockPos pos) {
-        List<LivingEntity> entitiesInBox = world.getNonSpectatingEntities(LivingEntity.class, ONE_BLOCK_ABOVE_BOX.offset(pos));
-        return entitiesInBox.stream()
-                .filter(this::isEntityWalkingServer)
-                .collect(Collectors.toList());
+    public static boolean anyWalkingEntityOnTop(ServerWorld world, BlockPos pos) {
+        return MoonStoneWorldManager.get(world).getOccupancyIndex().isOccupied(pos, world.getTime());
     }
 
     /**
      * Checks if an entity is walking - that is, if its moving in the x/z direction and if it's on the ground.<br>
-     * We require the use of mixins as the server does not store the previous velocities of the player entity.
+     * The server does not store the previous position of the player entity, so the horizontal speed is read from the
+     * world's {@link MoonStoneMotionTracker}, which saves it once per tick for entities near Moon Stone.
      *
      * @return true if the entity has a non-zero velocity
      */
-    private boolean isEntityWalkingServer(Entity entity) {
-
-
-        boolean isOnGround = entity.isOnGround();
-
-        boolean isXVelocityZero = !(Math.abs(((EntityPrevPosAccess) entity).getPrevXServer() - entity.getX()) > ERROR_EPSILON);
-        boolean isZVelocityZero = !(Math.abs(((EntityPrevPosAccess) entity).getPrevZServer() - entity.getZ()) > ERROR_EPSILON);
-        boolean isFalling = entity.fallDistance > ERROR_EPSILON;
-
-        // Entity is on ground AND y-velocity is 0 AND X/Z velocities are non-zero
-        // OR, Entity on ground AND y-velocity is non-zero AND (X AND Z velocities are zero)
-        boolean isWalking = !isFalling && isOnGround && (!isXVelocityZero || !isZVelocityZero);
-
+    public static boolean isEntityWalkingServer(ServerWorld world, Entity entity) {
+        return MoonStoneWorldManager.get(world).getMotionTracker().isWalking(entity);
+    }
 
-        return isWalking;
+    /**
+     * Entity is on ground AND y-velocity is 0 AND X/Z velocities are non-zero.
+     *
+     * @param horizontalSpeedSquared the squared horizontal distance the entity moved during the last tick
+     * @see MoonStoneOccupancyIndex
+     */
+    public static boolean isWalking(boolean isOnGround, float fallDistance, double horizontalSpeedSquared) {
+        return isOnGround && fallDistance <= ERROR_EPSILON && horizontalSpeedSquared > ERROR_EPSILON_SQUARED;
     }
 
 
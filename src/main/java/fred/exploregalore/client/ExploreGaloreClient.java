@@ -0,0 +1,45 @@
+package fred.exploregalore.client;
+
+import fred.exploregalore.network.ExploreGaloreNetworking;
+import fred.exploregalore.world.MoonStoneRippleScheduler;
+import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientChunkEvents;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+
+@Environment(EnvType.CLIENT)
+public class ExploreGaloreClient implements ClientModInitializer {
+
+    private static final MoonStoneRipplePredictor RIPPLE_PREDICTOR = new MoonStoneRipplePredictor();
+    private static final MoonStoneClientLighting MOON_STONE_LIGHTING = new MoonStoneClientLighting();
+
+    public static MoonStoneClientLighting getMoonStoneLighting() {
+        return MOON_STONE_LIGHTING;
+    }
+
+    @Override
+    public void onInitializeClient() {
+        // Packets are received off the main thread, so the ripple is handed over to the client thread
+        ClientPlayNetworking.registerGlobalReceiver(ExploreGaloreNetworking.MOON_STONE_RIPPLE_STARTED, (client, handler, buf, responseSender) -> {
+            MoonStoneRippleScheduler.Ripple ripple = ExploreGaloreNetworking.readRipple(buf);
+            client.execute(() -> {
+                if (client.world != null) {
+                    RIPPLE_PREDICTOR.startRipple(client.world, ripple);
+                }
+            });
+        });
+
+        ClientTickEvents.END_WORLD_TICK.register(RIPPLE_PREDICTOR::tick);
+
+        ClientPlayNetworking.registerGlobalReceiver(ExploreGaloreNetworking.MOON_STONE_LIGHTING, (client, handler, buf, responseSender) -> {
+            boolean serverEmissive = buf.readBoolean();
+            client.execute(() -> MOON_STONE_LIGHTING.setServerEmissive(client.world, serverEmissive));
+        });
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> client.execute(MOON_STONE_LIGHTING::reset));
+        ClientChunkEvents.CHUNK_LOAD.register(MOON_STONE_LIGHTING::onChunkLoad);
+        ClientChunkEvents.CHUNK_UNLOAD.register(MOON_STONE_LIGHTING::onChunkUnload);
+    }
+}
@@ -0,0 +1,149 @@
+package fred.exploregalore.client;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import fred.exploregalore.core.ExploreGaloreConfig;
+import fred.exploregalore.world.MoonStonePresenceIndex;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+import java.util.BitSet;
+import java.util.function.Predicate;
+
+/**
+ * Lights Moon Stone in the client's own light engine when the server has
+ * {@link ExploreGaloreConfig#MOON_STONE_EMISSIVE_LIGHTING} enabled.<br>
+ * The client's light engine always treats lit Moon Stone as a level 15 light source, whatever the block state's
+ * luminance is (see {@code ChunkBlockLightProviderMixin}). The block light the server sends never includes Moon Stone
+ * in this mode though, so lit Moon Stone is queued on the client's light engine again whenever the server's light data
+ * would have replaced its glow:
+ * <ul>
+ *     <li>When a chunk is loaded, for every lit Moon Stone block in it.</li>
+ *     <li>When a light update packet is received, for every lit Moon Stone block within 15 blocks of the updated
+ *     sections - that is, in the updated sections and their neighbours.</li>
+ *     <li>When the server's mode is received, for every chunk already loaded.</li>
+ * </ul>
+ * The server tells the client its mode on join, so this follows the server the client is connected to.
+ */
+@Environment(EnvType.CLIENT)
+public class MoonStoneClientLighting {
+
+    private static final Predicate<BlockState> IS_LIT_MOON_STONE = state -> state.getBlock() instanceof MoonStoneBlock && MoonStoneBlock.isLit(state);
+
+    /**
+     * The chunks loaded in {@link #chunksWorld}, packed with {@link ChunkPos#toLong(int, int)}.
+     */
+    private final LongOpenHashSet loadedChunks;
+    private final LongOpenHashSet sectionsToRelight;
+    private final BlockPos.Mutable mutablePos;
+    private ClientWorld chunksWorld;
+    private boolean serverEmissive;
+
+    public MoonStoneClientLighting() {
+        this.loadedChunks = new LongOpenHashSet();
+        this.sectionsToRelight = new LongOpenHashSet();
+        this.mutablePos = new BlockPos.Mutable();
+    }
+
+    /**
+     * Sets the mode of the server the client is connected to. When it becomes emissive, the chunks that are already
+     * loaded are relit.
+     */
+    public void setServerEmissive(ClientWorld world, boolean serverEmissive) {
+        boolean wasEmissive = this.serverEmissive;
+        this.serverEmissive = serverEmissive;
+
+        if (serverEmissive && !wasEmissive && world != null && world == this.chunksWorld) {
+            LongIterator iterator = this.loadedChunks.iterator();
+            while (iterator.hasNext()) {
+                long chunkPos = iterator.nextLong();
+                WorldChunk chunk = world.getChunkManager().getWorldChunk(ChunkPos.getPackedX(chunkPos), ChunkPos.getPackedZ(chunkPos), false);
+                if (chunk != null) {
+                    relightChunk(world, chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the server's mode and loaded chunks, once disconnected.
+     */
+    public void reset() {
+        this.serverEmissive = false;
+        this.loadedChunks.clear();
+        this.chunksWorld = null;
+    }
+
+    public void onChunkLoad(ClientWorld world, WorldChunk chunk) {
+        // Chunks from a previous world/dimension are dropped
+        if (world != this.chunksWorld) {
+            this.loadedChunks.clear();
+            this.chunksWorld = world;
+        }
+        this.loadedChunks.add(chunk.getPos().toLong());
+
+        if (this.serverEmissive) {
+            relightChunk(world, chunk);
+        }
+    }
+
+    public void onChunkUnload(ClientWorld world, WorldChunk chunk) {
+        if (world == this.chunksWorld) {
+            this.loadedChunks.remove(chunk.getPos().toLong());
+        }
+    }
+
+    /**
+     * Called once a light update packet has been handled.
+     *
+     * @param blockLightMask the block light sections the packet set - bit i is section
+     *                       {@code world.getBottomSectionCoord() - 1 + i}, as the light engine has a section of padding
+     *                       above and below the world
+     */
+    public void onLightUpdate(ClientWorld world, int chunkX, int chunkZ, BitSet blockLightMask) {
+        if (!this.serverEmissive || blockLightMask.isEmpty()) {
+            return;
+        }
+
+        int bottomSection = world.getBottomSectionCoord();
+        int topSection = world.getTopSectionCoord();
+        for (int bit = blockLightMask.nextSetBit(0); bit >= 0; bit = blockLightMask.nextSetBit(bit + 1)) {
+            int sectionY = bottomSection - 1 + bit;
+
+            for (int y = Math.max(bottomSection, sectionY - 1); y <= Math.min(topSection - 1, sectionY + 1); y++) {
+                for (int x = chunkX - 1; x <= chunkX + 1; x++) {
+                    for (int z = chunkZ - 1; z <= chunkZ + 1; z++) {
+                        this.sectionsToRelight.add(ChunkSectionPos.asLong(x, y, z));
+                    }
+                }
+            }
+        }
+
+        LightingProvider lightingProvider = world.getChunkManager().getLightingProvider();
+        LongIterator iterator = this.sectionsToRelight.iterator();
+        while (iterator.hasNext()) {
+            long sectionPos = iterator.nextLong();
+            WorldChunk chunk = world.getChunkManager().getWorldChunk(ChunkSectionPos.unpackX(sectionPos), ChunkSectionPos.unpackZ(sectionPos), false);
+            if (chunk != null) {
+                ChunkSection section = chunk.getSectionArray()[world.sectionCoordToIndex(ChunkSectionPos.unpackY(sectionPos))];
+                MoonStonePresenceIndex.forEachMatchingBlock(chunk.getPos(), section, IS_LIT_MOON_STONE,
+                        (x, y, z) -> lightingProvider.checkBlock(this.mutablePos.set(x, y, z)));
+            }
+        }
+        this.sectionsToRelight.clear();
+    }
+
+    private void relightChunk(ClientWorld world, WorldChunk chunk) {
+        LightingProvider lightingProvider = world.getChunkManager().getLightingProvider();
+        MoonStonePresenceIndex.forEachMatchingBlock(chunk, IS_LIT_MOON_STONE, (x, y, z) -> lightingProvider.checkBlock(this.mutablePos.set(x, y, z)));
+    }
+}
@@ -0,0 +1,105 @@
+package fred.exploregalore.client;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import fred.exploregalore.util.math.DiscreteCircle;
+import fred.exploregalore.util.math.DiscreteSphere;
+import fred.exploregalore.world.MoonStoneRippleScheduler;
+import net.fabricmc.api.EnvType;
+import net.fabricmc.api.Environment;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Animates Moon Stone ripples on the client, from the single packet the server sends when a ripple starts.<br>
+ * The rings are expanded exactly as the server's {@link MoonStoneRippleScheduler} does, and every unlit Moon Stone
+ * block on a ring is lit in the client's world - which updates both its model and its light level. The server only
+ * sends the real state of the rings' Moon Stone blocks once the ripple has settled, which corrects any of them that
+ * was predicted wrong.
+ */
+@Environment(EnvType.CLIENT)
+public class MoonStoneRipplePredictor {
+
+    /**
+     * A ripple being animated, along with the next ring to light.
+     */
+    private static final class PredictedRipple {
+        private final MoonStoneRippleScheduler.Ripple ripple;
+        private int nextRing;
+
+        private PredictedRipple(MoonStoneRippleScheduler.Ripple ripple) {
+            this.ripple = ripple;
+            this.nextRing = 0;
+        }
+    }
+
+    private final List<PredictedRipple> activeRipples;
+    private final BlockPos.Mutable mutablePos;
+    private ClientWorld rippleWorld;
+
+    public MoonStoneRipplePredictor() {
+        this.activeRipples = new ArrayList<>();
+        this.mutablePos = new BlockPos.Mutable();
+    }
+
+    public void startRipple(ClientWorld world, MoonStoneRippleScheduler.Ripple ripple) {
+        // Ripples from a previous world/dimension are dropped
+        if (world != this.rippleWorld) {
+            this.activeRipples.clear();
+            this.rippleWorld = world;
+        }
+        this.activeRipples.add(new PredictedRipple(ripple));
+    }
+
+    public void tick(ClientWorld world) {
+        if (world != this.rippleWorld) {
+            return;
+        }
+        long time = world.getTime();
+
+        for (int i = this.activeRipples.size() - 1; i >= 0; i--) {
+            PredictedRipple predicted = this.activeRipples.get(i);
+            MoonStoneRippleScheduler.Ripple ripple = predicted.ripple;
+            int currentRing = Math.min((int) (time - ripple.startTick()) - 1, ripple.maxRadius());
+
+            // The client's time can jump forward, so any ring that was skipped over is lit too
+            for (; predicted.nextRing <= currentRing; predicted.nextRing++) {
+                predictRing(world, ripple, predicted.nextRing);
+            }
+            if (predicted.nextRing > ripple.maxRadius()) {
+                this.activeRipples.remove(i);
+            }
+        }
+    }
+
+    private void predictRing(ClientWorld world, MoonStoneRippleScheduler.Ripple ripple, int ring) {
+        int centerX = BlockPos.unpackLongX(ripple.center());
+        int centerY = BlockPos.unpackLongY(ripple.center());
+        int centerZ = BlockPos.unpackLongZ(ripple.center());
+
+        if (ripple.spherical()) {
+            for (int i = DiscreteSphere.shellStart(ring), end = DiscreteSphere.shellEnd(ring); i < end; i++) {
+                long offset = DiscreteSphere.OFFSETS[i];
+                predictLight(world, centerX + DiscreteSphere.unpackX(offset), centerY + DiscreteSphere.unpackY(offset), centerZ + DiscreteSphere.unpackZ(offset));
+            }
+        } else {
+            for (int i = DiscreteCircle.ringStart(ring), end = DiscreteCircle.ringEnd(ring); i < end; i++) {
+                long offset = DiscreteCircle.OFFSETS[i];
+                predictLight(world, centerX + DiscreteCircle.unpackX(offset), centerY, centerZ + DiscreteCircle.unpackZ(offset));
+            }
+        }
+    }
+
+    private void predictLight(ClientWorld world, int x, int y, int z) {
+        this.mutablePos.set(x, y, z);
+        BlockState state = world.getBlockState(this.mutablePos);
+
+        if (state.getBlock() instanceof MoonStoneBlock && !MoonStoneBlock.isLit(state)) {
+            world.setBlockState(this.mutablePos, state.with(MoonStoneBlock.LIT, true), Block.NOTIFY_LISTENERS);
+        }
+    }
+}
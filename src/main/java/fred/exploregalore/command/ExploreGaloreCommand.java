@@ -0,0 +1,54 @@
+package fred.exploregalore.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import fred.exploregalore.ExploreGalore;
+import fred.exploregalore.world.MoonStoneStats;
+import fred.exploregalore.world.MoonStoneWorldManager;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.LiteralText;
+
+/**
+ * <pre>
+ * /exploregalore stats        - shows the Moon Stone stats of the world the command is run in
+ * /exploregalore stats reset  - resets them
+ * </pre>
+ */
+public final class ExploreGaloreCommand {
+
+    private ExploreGaloreCommand() {
+    }
+
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
+        dispatcher.register(CommandManager.literal(ExploreGalore.MOD_ID)
+                .requires(source -> source.hasPermissionLevel(2))
+                .then(CommandManager.literal("stats")
+                        .executes(context -> showStats(context.getSource()))
+                        .then(CommandManager.literal("reset")
+                                .executes(context -> resetStats(context.getSource())))));
+    }
+
+    private static int showStats(ServerCommandSource source) {
+        MoonStoneStats stats = MoonStoneWorldManager.get(source.getWorld()).getStats();
+        long ticks = stats.getTicks();
+
+        source.sendFeedback(new LiteralText("Moon Stone stats for " + source.getWorld().getRegistryKey().getValue() + " over " + ticks + " ticks:"), false);
+        for (MoonStoneStats.Counter counter : MoonStoneStats.Counter.values()) {
+            long total = stats.get(counter);
+            String perTick = ticks == 0 ? "-" : String.format("%.2f", (double) total / ticks);
+            source.sendFeedback(new LiteralText("  " + counter.getLabel() + ": " + total + " (" + perTick + "/tick)"), false);
+        }
+        source.sendFeedback(new LiteralText(String.format("  Moon Stone time per tick: p50 < %.3fms, p95 < %.3fms, p99 < %.3fms, max < %.3fms",
+                stats.getTickNanosPercentile(0.5D) / 1.0E6D,
+                stats.getTickNanosPercentile(0.95D) / 1.0E6D,
+                stats.getTickNanosPercentile(0.99D) / 1.0E6D,
+                stats.getTickNanosPercentile(1.0D) / 1.0E6D)), false);
+        return (int) Math.min(ticks, Integer.MAX_VALUE);
+    }
+
+    private static int resetStats(ServerCommandSource source) {
+        MoonStoneWorldManager.get(source.getWorld()).getStats().reset();
+        source.sendFeedback(new LiteralText("Moon Stone stats reset"), true);
+        return 1;
+    }
+}
@@ -16,10 +16,16 @@ public class BlockList {
     public static final Block LIVING_LILY_STEM;
 
     static {
-        MOON_STONE = registerBlock(new MoonStoneBlock(AbstractBlock.Settings.of(Material.STONE).strength(1.5f, 6.0f).luminance((state) -> MoonStoneBlock.isLit(state) ? 15 : 0)), "moon_stone");
+        MOON_STONE = registerBlock(new MoonStoneBlock(moonStoneSettings()), "moon_stone");
         LIVING_LILY_STEM = registerBlock(new LivingLilyStemBlock(AbstractBlock.Settings.of(Material.PLANT).strength(0.1F).sounds(BlockSoundGroup.GRASS)), "living_lily_stem");
     }
 
+    private static AbstractBlock.Settings moonStoneSettings() {
+        // With emissive lighting, lit Moon Stone is only lit by the clients' light engines (see MoonStoneClientLighting)
+        return AbstractBlock.Settings.of(Material.STONE).strength(1.5f, 6.0f)
+                .luminance((state) -> !ExploreGaloreConfig.MOON_STONE_EMISSIVE_LIGHTING && MoonStoneBlock.isLit(state) ? 15 : 0);
+    }
+
     private static <T extends Block> T registerBlock(T block, String registryName) {
         return Registry.register(Registry.BLOCK, new Identifier(ExploreGalore.MOD_ID, registryName), block);
     }
@@ -0,0 +1,37 @@
+package fred.exploregalore.core;
+
+/**
+ * Server options, read once from JVM system properties (-Dexploregalore.&lt;option&gt;=&lt;value&gt;).
+ */
+public final class ExploreGaloreConfig {
+
+    /**
+     * If true, Moon Stone ripples spread out in spherical shells rather than flat rings, so that Moon Stone on stairs,
+     * slopes or multi-level floors also lights up.
+     */
+    public static final boolean MOON_STONE_SPHERICAL_RIPPLES;
+    /**
+     * If true, Moon Stone emits no block light on the server, so lighting and extinguishing it never goes through the
+     * server's light engine, and sends no light update packets.<br>
+     * The server tells each client about it when they join, and the clients then light lit Moon Stone in their own
+     * light engine only (see {@code MoonStoneClientLighting}) - the glow around ripples still shows. Only the server's
+     * light data goes without it, so mob spawning and anything else the server reads block light for ignores lit Moon
+     * Stone.<br>
+     * Only the server's value matters - clients follow the server they're connected to.
+     */
+    public static final boolean MOON_STONE_EMISSIVE_LIGHTING;
+    /**
+     * The maximum number of Moon Stone blocks that ripples may light per tick, in each world. Anything over the budget
+     * is lit on a later tick.
+     */
+    public static final int MOON_STONE_TRANSITION_BUDGET;
+
+    static {
+        MOON_STONE_SPHERICAL_RIPPLES = Boolean.getBoolean("exploregalore.moonStoneSphericalRipples");
+        MOON_STONE_EMISSIVE_LIGHTING = Boolean.getBoolean("exploregalore.moonStoneEmissiveLighting");
+        MOON_STONE_TRANSITION_BUDGET = Math.max(1, Integer.getInteger("exploregalore.moonStoneTransitionBudget", 4096));
+    }
+
+    private ExploreGaloreConfig() {
+    }
+}
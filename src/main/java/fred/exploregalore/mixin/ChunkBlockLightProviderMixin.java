@@ -0,0 +1,31 @@
+package fred.exploregalore.mixin;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import fred.exploregalore.client.MoonStoneClientLighting;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.BlockView;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.ChunkBlockLightProvider;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+/**
+ * Makes the client's light engine treat lit Moon Stone as a level 15 light source, whatever the luminance of its block
+ * state. The server's light engine (the integrated server's included) is left alone.
+ *
+ * @see MoonStoneClientLighting
+ */
+@Mixin(ChunkBlockLightProvider.class)
+public abstract class ChunkBlockLightProviderMixin {
+
+    @Redirect(method = "getLightSourceLuminance", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/BlockView;getLuminance(Lnet/minecraft/util/math/BlockPos;)I"))
+    private int getClientMoonStoneLuminance(BlockView chunk, BlockPos pos) {
+        BlockState state = chunk.getBlockState(pos);
+        if (state.getBlock() instanceof MoonStoneBlock && chunk instanceof WorldChunk worldChunk && worldChunk.getWorld().isClient) {
+            return MoonStoneBlock.isLit(state) ? 15 : 0;
+        }
+        return state.getLuminance();
+    }
+}
@@ -0,0 +1,42 @@
+package fred.exploregalore.mixin;
+
+import fred.exploregalore.world.MoonStoneChunkPersistence;
+import fred.exploregalore.world.MoonStoneWorldManager;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.structure.StructureManager;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.ChunkSerializer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ProtoChunk;
+import net.minecraft.world.poi.PointOfInterestStorage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * Saves and loads the Moon Stone state of each chunk along with the chunk.
+ *
+ * @see MoonStoneChunkPersistence
+ */
+@Mixin(ChunkSerializer.class)
+public abstract class ChunkSerializerMixin {
+
+    @Inject(method = "serialize", at = @At("RETURN"))
+    private static void writeMoonStoneState(ServerWorld world, Chunk chunk, CallbackInfoReturnable<NbtCompound> cir) {
+        NbtCompound moonStoneState = MoonStoneWorldManager.get(world).getChunkPersistence().writeChunk(chunk.getPos());
+        if (moonStoneState != null) {
+            cir.getReturnValue().getCompound("Level").put(MoonStoneChunkPersistence.NBT_KEY, moonStoneState);
+        }
+    }
+
+    @Inject(method = "deserialize", at = @At("RETURN"))
+    private static void readMoonStoneState(ServerWorld world, StructureManager structureManager, PointOfInterestStorage poiStorage, ChunkPos pos, NbtCompound nbt, CallbackInfoReturnable<ProtoChunk> cir) {
+        NbtCompound level = nbt.getCompound("Level");
+        if (level.contains(MoonStoneChunkPersistence.NBT_KEY, NbtElement.COMPOUND_TYPE)) {
+            MoonStoneWorldManager.get(world).getChunkPersistence().readChunk(pos, level.getCompound(MoonStoneChunkPersistence.NBT_KEY));
+        }
+    }
+}
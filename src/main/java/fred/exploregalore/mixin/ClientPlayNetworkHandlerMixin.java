@@ -0,0 +1,30 @@
+package fred.exploregalore.mixin;
+
+import fred.exploregalore.client.ExploreGaloreClient;
+import fred.exploregalore.client.MoonStoneClientLighting;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.network.packet.s2c.play.LightUpdateS2CPacket;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Relights the lit Moon Stone around the sections of a light update packet, whose light data comes from a server that
+ * may not light Moon Stone.
+ *
+ * @see MoonStoneClientLighting#onLightUpdate
+ */
+@Mixin(ClientPlayNetworkHandler.class)
+public abstract class ClientPlayNetworkHandlerMixin {
+
+    @Shadow
+    private ClientWorld world;
+
+    @Inject(method = "onLightUpdate", at = @At("TAIL"))
+    private void relightMoonStone(LightUpdateS2CPacket packet, CallbackInfo ci) {
+        ExploreGaloreClient.getMoonStoneLighting().onLightUpdate(this.world, packet.getChunkX(), packet.getChunkZ(), packet.getBlockLightMask());
+    }
+}
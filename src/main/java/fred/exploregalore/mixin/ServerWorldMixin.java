@@ -0,0 +1,25 @@
+package fred.exploregalore.mixin;
+
+import fred.exploregalore.util.MoonStoneWorldAccess;
+import fred.exploregalore.world.MoonStoneWorldManager;
+import net.minecraft.server.world.ServerWorld;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+@Mixin(ServerWorld.class)
+public abstract class ServerWorldMixin implements MoonStoneWorldAccess {
+
+    @Unique
+    private MoonStoneWorldManager moonStoneManager;
+
+    /**
+     * The manager is created on first use - only ever accessed from the server thread.
+     */
+    @Override
+    public MoonStoneWorldManager getMoonStoneManager() {
+        if (this.moonStoneManager == null) {
+            this.moonStoneManager = new MoonStoneWorldManager((ServerWorld) (Object) this);
+        }
+        return this.moonStoneManager;
+    }
+}
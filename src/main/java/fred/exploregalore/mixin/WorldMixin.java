@@ -0,0 +1,31 @@
+package fred.exploregalore.mixin;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import fred.exploregalore.client.MoonStoneClientLighting;
+import fred.exploregalore.core.ExploreGaloreConfig;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * With {@link ExploreGaloreConfig#MOON_STONE_EMISSIVE_LIGHTING} enabled in this game, every Moon Stone state has the
+ * same luminance, so vanilla doesn't queue a light check when Moon Stone is lit, extinguished or replaced. The client's
+ * light engine still lights it (see {@link MoonStoneClientLighting}), so the check is queued here instead. The light
+ * engine only reads the block once it runs, after the change.
+ */
+@Mixin(World.class)
+public abstract class WorldMixin {
+
+    @Inject(method = "setBlockState(Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/block/BlockState;II)Z", at = @At("HEAD"))
+    private void checkClientMoonStoneLight(BlockPos pos, BlockState state, int flags, int maxUpdateDepth, CallbackInfoReturnable<Boolean> cir) {
+        World world = (World) (Object) this;
+        if (world.isClient && ExploreGaloreConfig.MOON_STONE_EMISSIVE_LIGHTING && !world.isOutOfHeightLimit(pos)
+                && (state.getBlock() instanceof MoonStoneBlock || world.getBlockState(pos).getBlock() instanceof MoonStoneBlock)) {
+            world.getChunkManager().getLightingProvider().checkBlock(pos);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package fred.exploregalore.network;
+
+import fred.exploregalore.ExploreGalore;
+import fred.exploregalore.core.ExploreGaloreConfig;
+import fred.exploregalore.world.MoonStoneRippleScheduler;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
+import net.fabricmc.fabric.api.networking.v1.PacketSender;
+import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.network.Packet;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.Set;
+
+/**
+ * The packets sent between the server and the client.
+ */
+public final class ExploreGaloreNetworking {
+
+    /**
+     * Sent to the clients tracking the area of a Moon Stone ripple when it starts. The clients animate the ripple's
+     * rings themselves.
+     */
+    public static final Identifier MOON_STONE_RIPPLE_STARTED;
+    /**
+     * Sent to each client when it joins, with whether {@link ExploreGaloreConfig#MOON_STONE_EMISSIVE_LIGHTING} is
+     * enabled on the server - if so, the client lights Moon Stone by itself.
+     */
+    public static final Identifier MOON_STONE_LIGHTING;
+
+    static {
+        MOON_STONE_RIPPLE_STARTED = new Identifier(ExploreGalore.MOD_ID, "moon_stone_ripple_started");
+        MOON_STONE_LIGHTING = new Identifier(ExploreGalore.MOD_ID, "moon_stone_lighting");
+    }
+
+    private ExploreGaloreNetworking() {
+    }
+
+    /**
+     * Sends a single "ripple started" packet to every player tracking any chunk the ripple's rings reach. The blocks
+     * lit by the rings aren't sent until the ripple settles, so a player that can see part of the ripple but not its
+     * center must still animate it. Players that start tracking one of those chunks later are sent the chunk as it is
+     * on the server, lit blocks included.
+     */
+    public static void sendRippleStarted(ServerWorld world, MoonStoneRippleScheduler.Ripple ripple) {
+        int centerX = BlockPos.unpackLongX(ripple.center());
+        int centerZ = BlockPos.unpackLongZ(ripple.center());
+        int radius = ripple.maxRadius();
+
+        Set<ServerPlayerEntity> players = new ReferenceOpenHashSet<>();
+        for (int chunkX = (centerX - radius) >> 4; chunkX <= (centerX + radius) >> 4; chunkX++) {
+            for (int chunkZ = (centerZ - radius) >> 4; chunkZ <= (centerZ + radius) >> 4; chunkZ++) {
+                players.addAll(PlayerLookup.tracking(world, new ChunkPos(chunkX, chunkZ)));
+            }
+        }
+        if (players.isEmpty()) {
+            return;
+        }
+
+        PacketByteBuf buf = PacketByteBufs.create();
+        writeRipple(buf, ripple);
+        Packet<?> packet = ServerPlayNetworking.createS2CPacket(MOON_STONE_RIPPLE_STARTED, buf);
+
+        for (ServerPlayerEntity player : players) {
+            player.networkHandler.sendPacket(packet);
+        }
+    }
+
+    /**
+     * Tells a client that just joined how the server lights Moon Stone.
+     */
+    public static void sendMoonStoneLighting(PacketSender sender) {
+        PacketByteBuf buf = PacketByteBufs.create();
+        buf.writeBoolean(ExploreGaloreConfig.MOON_STONE_EMISSIVE_LIGHTING);
+        sender.sendPacket(MOON_STONE_LIGHTING, buf);
+    }
+
+    public static void writeRipple(PacketByteBuf buf, MoonStoneRippleScheduler.Ripple ripple) {
+        buf.writeLong(ripple.center());
+        buf.writeLong(ripple.startTick());
+        buf.writeVarInt(ripple.maxRadius());
+        buf.writeBoolean(ripple.spherical());
+    }
+
+    public static MoonStoneRippleScheduler.Ripple readRipple(PacketByteBuf buf) {
+        return new MoonStoneRippleScheduler.Ripple(buf.readLong(), buf.readLong(), buf.readVarInt(), buf.readBoolean());
+    }
+}
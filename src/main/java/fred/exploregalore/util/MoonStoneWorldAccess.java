@@ -0,0 +1,11 @@
+package fred.exploregalore.util;
+
+import fred.exploregalore.world.MoonStoneWorldManager;
+
+/**
+ * Gives access to the per-world Moon Stone state that is attached to every ServerWorld (via mixin).
+ */
+public interface MoonStoneWorldAccess {
+
+    MoonStoneWorldManager getMoonStoneManager();
+}
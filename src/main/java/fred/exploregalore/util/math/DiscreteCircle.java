@@ -1,36 +1,244 @@
 package fred.exploregalore.util.math;
 
+import net.minecraft.util.math.BlockPos;
+
+import java.util.Arrays;
+
 /**
  * Provides an array of coordinates for a series of concentric circles.<br>
- * The base set of coordinates for each circle was calculated
- * using the Circle MidPoint Algorithm. However, as the algorithm does not guarantee perfect concentricity - that is,
- * it does not guarantee that there will be no unfilled points between adjacent circles (of radius varying by one) -
- * manual inspection was also used fill in any points that were not filled in.
+ * The rings are generated once, when the class is loaded, for every radius up to {@link #MAX_RADIUS}. Ring r is the
+ * annulus between radius r - 1 and r: a point at distance d from the center belongs to ring r if r - 1 &lt; d &lt;= r,
+ * compared exactly on integers as (r - 1)^2 &lt; d^2 &lt;= r^2. Adjacent rings are therefore perfectly concentric: there
+ * are no unfilled points between them, and no point is in two rings. (The Circle MidPoint Algorithm, which was used for
+ * the original hand-patched table, does not guarantee this.)<br>
+ * The generated rings are verified when they are built, against the definition rather than against the generator:
+ * every point of a ring must be within its annulus, every point within {@link #MAX_RADIUS} must be in exactly one ring,
+ * and the rings up to r must hold exactly the lattice points of the disc of radius r, counted column by column.<br><br>
+ * The points are stored flattened, for cache-friendly iteration without allocation: the x/z offsets of every ring are
+ * packed into longs (see {@link #pack(int, int)}) and stored one ring after another in {@link #OFFSETS}. The points of
+ * ring r are at indices [{@link #ringStart(int)}, {@link #ringEnd(int)}). Ring 0 is the center itself.
  */
 public final class DiscreteCircle {
-    public static final int[][][] POINTS;
+    /**
+     * The packed x/z offsets of the points of every ring, ordered by ring.
+     */
+    public static final long[] OFFSETS;
+    /**
+     * RING_STARTS[r] is the index in {@link #OFFSETS} of the first point of ring r. Has one extra trailing entry, so
+     * that RING_STARTS[r + 1] is always the end of ring r.
+     */
+    public static final int[] RING_STARTS;
+    /**
+     * The radius of the outermost ring.
+     */
     public static final int MAX_RADIUS;
+    /**
+     * The number of rings, including the center.
+     */
+    public static final int RING_COUNT;
 
     static {
-        POINTS = new int[][][]
-                {
-                        {{0, 0}},
-                        {{1, 0}, {0, -1}, {-1, 0}, {0, 1}, {1, 1}, {1, -1}, {-1, -1}, {-1, 1}},
-                        {{2, 1}, {-1, -2}, {-2, -1}, {1, 2}, {-2, 0}, {0, 2}, {-2, 1}, {-1, 2}, {2, -1}, {1, -2}, {2, 0}, {0, -2}},
-                        {{2, 2}, {-2, -2}, {-3, -1}, {1, 3}, {-3, 0}, {0, 3}, {-3, 1}, {-1, 3}, {-2, 2}, {3, -1}, {1, -3}, {2, -2}, {3, 0}, {0, -3}, {3, 1}, {-1, -3}},
-                        {{3, 2}, {-2, -3}, {3, 3}, {-3, -3}, {-3, -2}, {2, 3}, {-4, -1}, {1, 4}, {-4, 0}, {0, 4}, {-4, 1}, {-1, 4}, {-3, 2}, {-2, 3}, {-3, 3}, {3, -3}, {4, -1}, {1, -4}, {3, -2}, {2, -3}, {4, 0}, {0, -4}, {4, 1}, {-1, -4}},
-                        {{4, 3}, {-4, -3}, {2, 5}, {0, 5}, {-2, 5}, {-4, 3}, {5, -2}, {3, -4}, {5, -1}, {1, -5}, {5, 0}, {5, 1}, {-1, -5}, {5, 2}, {-3, -4}, {3, 4}, {-5, -2}, {-5, -1}, {1, 5}, {-5, 0}, {-5, 1}, {-1, 5}, {-5, 2}, {-3, 4}, {2, -5}, {4, -3}, {0, -5}, {-2, -5}, {2, 4}, {4, 2}, {-2, 4}, {4, -2}, {2, -4}, {-4, 2}, {-2, -4}, {-4, -2}},
-                        {{4, 5}, {5, 4}, {-4, 5}, {5, -4}, {4, -5}, {-5, 4}, {-4, -5}, {-5, -4}, {4, 4}, {-4, -4}, {-6, -2}, {2, 6}, {-6, -1}, {-6, 0}, {0, 6}, {-6, 1}, {-6, 2}, {-2, 6}, {-4, 4}, {5, -3}, {3, -5}, {1, -6}, {-1, -6}, {5, 3}, {-3, -5}, {-5, -3}, {3, 5}, {1, 6}, {-1, 6}, {-5, 3}, {-3, 5}, {6, -2}, {2, -6}, {4, -4}, {6, -1}, {6, 0}, {0, -6}, {6, 1}, {6, 2}, {-2, -6}},
-                        {{-6, -4}, {4, 6}, {-6, -3}, {2, 7}, {0, 7}, {-2, 7}, {-6, 3}, {-6, 4}, {-4, 6}, {5, -5}, {7, -2}, {3, -6}, {7, -1}, {1, -7}, {7, 0}, {7, 1}, {-1, -7}, {7, 2}, {-3, -6}, {5, 5}, {-5, -5}, {3, 6}, {-7, -2}, {-7, -1}, {1, 7}, {-7, 0}, {-7, 1}, {-1, 7}, {-7, 2}, {-3, 6}, {-5, 5}, {6, -4}, {4, -6}, {2, -7}, {6, -3}, {0, -7}, {-2, -7}, {6, 3}, {6, 4}, {-4, -6}},
-                        {{6, 5}, {-6, -5}, {4, 7}, {-8, -2}, {2, 8}, {-8, -1}, {-8, 0}, {0, 8}, {-8, 1}, {-8, 2}, {-2, 8}, {-4, 7}, {-6, 5}, {7, -4}, {5, -6}, {7, -3}, {3, -7}, {1, -8}, {-1, -8}, {7, 3}, {-3, -7}, {7, 4}, {-5, -6}, {5, 6}, {-7, -4}, {-7, -3}, {3, 7}, {1, 8}, {-1, 8}, {-7, 3}, {-3, 7}, {-7, 4}, {-5, 6}, {4, -7}, {6, -5}, {8, -2}, {2, -8}, {8, -1}, {8, 0}, {0, -8}, {8, 1}, {8, 2}, {-2, -8}, {-4, -7}}
-                };
-        MAX_RADIUS = POINTS.length;
-    }
-
-
-    public int[] computeNextCoorCircleMidpointFirstOctant(int x, int y, int radius) {
-        int possiblePointsComparedError = 2 * ((x * x + y * y - radius * radius) + (2 * y + 1)) + (1 - 2 * x);
-        boolean decrementX = possiblePointsComparedError > 0;
-        return decrementX ? new int[]{x - 1, y + 1} : new int[]{x, y + 1};
+        MAX_RADIUS = 64;
+        RING_COUNT = MAX_RADIUS + 1;
+
+        int size = 2 * MAX_RADIUS + 1;
+        long[] points = new long[size * size];
+        int[] pointRings = new int[size * size];
+        int pointCount = 0;
+        for (int x = -MAX_RADIUS; x <= MAX_RADIUS; x++) {
+            for (int z = -MAX_RADIUS; z <= MAX_RADIUS; z++) {
+                int ring = ringOf(x, z);
+                if (ring <= MAX_RADIUS) {
+                    points[pointCount] = pack(x, z);
+                    pointRings[pointCount++] = ring;
+                }
+            }
+        }
+        RING_STARTS = new int[RING_COUNT + 1];
+        OFFSETS = layOutRings(points, pointRings, pointCount, RING_STARTS);
+
+        verifyRings();
+    }
+
+    private DiscreteCircle() {
+    }
+
+    /**
+     * Gets the ring that a point belongs to.
+     */
+    public static int ringOf(int x, int z) {
+        return ringOfDistanceSquared((long) x * x + (long) z * z);
+    }
+
+    /**
+     * Gets the ring r whose annulus holds a point at the given squared distance from the center - the r for which
+     * (r - 1)^2 &lt; distSquared &lt;= r^2, i.e. the distance rounded up. Also used for the shells of
+     * {@link DiscreteSphere}.
+     */
+    public static int ringOfDistanceSquared(long distSquared) {
+        int ring = (int) Math.ceil(Math.sqrt((double) distSquared));
+
+        // Correcting any floating point error with exact integer comparisons
+        while (square(ring) < distSquared) {
+            ring++;
+        }
+        while (ring > 0 && square(ring - 1) >= distSquared) {
+            ring--;
+        }
+        return ring;
+    }
+
+    /**
+     * @return whether a point at the given squared distance is in the ring's annulus - checked directly against the
+     * definition, for verifying the generated rings
+     */
+    static boolean isInRing(long distSquared, int ring) {
+        return ring == 0 ? distSquared == 0 : square(ring - 1) < distSquared && distSquared <= square(ring);
+    }
+
+    /**
+     * @return the largest integer whose square is at most the value
+     */
+    static int floorSqrt(long value) {
+        int root = (int) Math.sqrt((double) value);
+        while (square(root) > value) {
+            root--;
+        }
+        while (square(root + 1) <= value) {
+            root++;
+        }
+        return root;
+    }
+
+    static long square(long value) {
+        return value * value;
+    }
+
+    /**
+     * Lays points out one ring after another (a counting sort by ring).
+     *
+     * @param pointRings the ring of each point
+     * @param ringStarts filled in with the index of the first point of each ring, plus a trailing entry for the end of
+     *                   the last ring
+     * @return the points, ordered by ring
+     */
+    static long[] layOutRings(long[] points, int[] pointRings, int pointCount, int[] ringStarts) {
+        int ringCount = ringStarts.length - 1;
+        for (int i = 0; i < pointCount; i++) {
+            ringStarts[pointRings[i] + 1]++;
+        }
+        for (int ring = 0; ring < ringCount; ring++) {
+            ringStarts[ring + 1] += ringStarts[ring];
+        }
+
+        long[] orderedPoints = new long[pointCount];
+        int[] nextIndex = Arrays.copyOf(ringStarts, ringCount);
+        for (int i = 0; i < pointCount; i++) {
+            orderedPoints[nextIndex[pointRings[i]]++] = points[i];
+        }
+        return orderedPoints;
+    }
+
+    /**
+     * Verifies that every ring covers exactly its annulus, without going through {@link #ringOf(int, int)}:
+     * <ol>
+     *     <li>Every point of a ring is within the ring's annulus.</li>
+     *     <li>Every point within {@link #MAX_RADIUS} of the center is in exactly one ring, and no other point is in any.</li>
+     *     <li>The rings up to r hold as many points as there are lattice points in the disc of radius r - counted
+     *     separately, a column of 2 * floor(sqrt(r^2 - x^2)) + 1 points for each x.</li>
+     * </ol>
+     *
+     * @throws IllegalStateException if the rings have a gap or an overlap
+     */
+    private static void verifyRings() {
+        int size = 2 * MAX_RADIUS + 1;
+        int[] timesCovered = new int[size * size];
+
+        for (int ring = 0; ring < RING_COUNT; ring++) {
+            for (int i = ringStart(ring); i < ringEnd(ring); i++) {
+                int x = unpackX(OFFSETS[i]);
+                int z = unpackZ(OFFSETS[i]);
+
+                if (!isInRing((long) x * x + (long) z * z, ring)) {
+                    throw new IllegalStateException("Point (" + x + ", " + z + ") is outside of ring " + ring);
+                }
+                timesCovered[(x + MAX_RADIUS) * size + (z + MAX_RADIUS)]++;
+            }
+        }
+
+        for (int x = -MAX_RADIUS; x <= MAX_RADIUS; x++) {
+            for (int z = -MAX_RADIUS; z <= MAX_RADIUS; z++) {
+                int expected = (long) x * x + (long) z * z <= square(MAX_RADIUS) ? 1 : 0;
+                if (timesCovered[(x + MAX_RADIUS) * size + (z + MAX_RADIUS)] != expected) {
+                    throw new IllegalStateException("Point (" + x + ", " + z + ") is not covered by exactly one ring");
+                }
+            }
+        }
+
+        for (int ring = 0; ring < RING_COUNT; ring++) {
+            long discPoints = 0;
+            for (int x = -ring; x <= ring; x++) {
+                discPoints += 2L * floorSqrt(square(ring) - (long) x * x) + 1;
+            }
+            if (ringEnd(ring) != discPoints) {
+                throw new IllegalStateException("Rings up to " + ring + " hold " + ringEnd(ring) + " points, rather than " + discPoints);
+            }
+        }
+    }
+
+    /**
+     * Packs an x/z offset into a single long - x in the upper 32 bits, z in the lower 32 bits.
+     */
+    public static long pack(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long packedOffset) {
+        return (int) (packedOffset >> 32);
+    }
+
+    public static int unpackZ(long packedOffset) {
+        return (int) packedOffset;
+    }
+
+    /**
+     * @return the index in {@link #OFFSETS} of the first point of the ring
+     */
+    public static int ringStart(int ring) {
+        return RING_STARTS[ring];
+    }
+
+    /**
+     * @return the index in {@link #OFFSETS} after the last point of the ring
+     */
+    public static int ringEnd(int ring) {
+        return RING_STARTS[ring + 1];
+    }
+
+    /**
+     * Sets the mutable position to a point of a ring, without allocating a new BlockPos.
+     *
+     * @param index the index of the point in {@link #OFFSETS}
+     * @return the mutable position passed in
+     */
+    public static BlockPos.Mutable setToPoint(BlockPos.Mutable mutablePos, BlockPos center, int index) {
+        long offset = OFFSETS[index];
+        return mutablePos.set(center.getX() + unpackX(offset), center.getY(), center.getZ() + unpackZ(offset));
+    }
+
+    /**
+     * Gets the absolute positions of the points of a ring around a center.
+     *
+     * @return the positions of the ring, packed with {@link BlockPos#asLong()}
+     */
+    public static long[] getAbsolutePositions(BlockPos center, int ring) {
+        int start = ringStart(ring);
+        long[] positions = new long[ringEnd(ring) - start];
+
+        for (int i = 0; i < positions.length; i++) {
+            long offset = OFFSETS[start + i];
+            positions[i] = BlockPos.asLong(center.getX() + unpackX(offset), center.getY(), center.getZ() + unpackZ(offset));
+        }
+        return positions;
     }
 }
@@ -0,0 +1,172 @@
+package fred.exploregalore.util.math;
+
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * The spherical counterpart of {@link DiscreteCircle} - provides the coordinates of a series of concentric spherical
+ * shells.<br>
+ * The shells are generated once, when the class is loaded, for every radius up to {@link #MAX_RADIUS}. Shell r is the
+ * spherical shell between radius r - 1 and r, with the same exact integer test as the rings of DiscreteCircle (see
+ * {@link DiscreteCircle#ringOfDistanceSquared(long)}) - so adjacent shells have no gaps between them and never overlap.
+ * The shells are verified in the same way as the rings, with the lattice points of each ball counted column by column.
+ * <br><br>
+ * The number of points in a shell grows roughly as r^2, so the maximum radius is kept much smaller than
+ * DiscreteCircle's.<br>
+ * The points are stored flattened: the x/y/z offsets of every shell are packed into longs (see
+ * {@link #pack(int, int, int)}) and stored one shell after another in {@link #OFFSETS}. The points of shell r are at
+ * indices [{@link #shellStart(int)}, {@link #shellEnd(int)}). Shell 0 is the center itself.
+ */
+public final class DiscreteSphere {
+    /**
+     * The packed x/y/z offsets of the points of every shell, ordered by shell.
+     */
+    public static final long[] OFFSETS;
+    /**
+     * SHELL_STARTS[r] is the index in {@link #OFFSETS} of the first point of shell r. Has one extra trailing entry, so
+     * that SHELL_STARTS[r + 1] is always the end of shell r.
+     */
+    public static final int[] SHELL_STARTS;
+    /**
+     * The radius of the outermost shell.
+     */
+    public static final int MAX_RADIUS;
+    /**
+     * The number of shells, including the center.
+     */
+    public static final int SHELL_COUNT;
+
+    static {
+        MAX_RADIUS = 16;
+        SHELL_COUNT = MAX_RADIUS + 1;
+
+        int size = 2 * MAX_RADIUS + 1;
+        long[] points = new long[size * size * size];
+        int[] pointShells = new int[size * size * size];
+        int pointCount = 0;
+        for (int x = -MAX_RADIUS; x <= MAX_RADIUS; x++) {
+            for (int y = -MAX_RADIUS; y <= MAX_RADIUS; y++) {
+                for (int z = -MAX_RADIUS; z <= MAX_RADIUS; z++) {
+                    int shell = shellOf(x, y, z);
+                    if (shell <= MAX_RADIUS) {
+                        points[pointCount] = pack(x, y, z);
+                        pointShells[pointCount++] = shell;
+                    }
+                }
+            }
+        }
+        SHELL_STARTS = new int[SHELL_COUNT + 1];
+        OFFSETS = DiscreteCircle.layOutRings(points, pointShells, pointCount, SHELL_STARTS);
+
+        verifyShells();
+    }
+
+    private DiscreteSphere() {
+    }
+
+    /**
+     * Gets the shell that a point belongs to.
+     */
+    public static int shellOf(int x, int y, int z) {
+        return DiscreteCircle.ringOfDistanceSquared((long) x * x + (long) y * y + (long) z * z);
+    }
+
+    /**
+     * Verifies the shells as {@code DiscreteCircle#verifyRings()} verifies the rings - each point is within its shell,
+     * every point of the ball of radius {@link #MAX_RADIUS} is in exactly one shell, and the shells up to r hold as
+     * many points as the ball of radius r has lattice points.
+     *
+     * @throws IllegalStateException if the shells have a gap or an overlap
+     */
+    private static void verifyShells() {
+        int size = 2 * MAX_RADIUS + 1;
+        int[] timesCovered = new int[size * size * size];
+
+        for (int shell = 0; shell < SHELL_COUNT; shell++) {
+            for (int i = shellStart(shell); i < shellEnd(shell); i++) {
+                int x = unpackX(OFFSETS[i]);
+                int y = unpackY(OFFSETS[i]);
+                int z = unpackZ(OFFSETS[i]);
+
+                if (!DiscreteCircle.isInRing((long) x * x + (long) y * y + (long) z * z, shell)) {
+                    throw new IllegalStateException("Point (" + x + ", " + y + ", " + z + ") is outside of shell " + shell);
+                }
+                timesCovered[((x + MAX_RADIUS) * size + (y + MAX_RADIUS)) * size + (z + MAX_RADIUS)]++;
+            }
+        }
+
+        for (int x = -MAX_RADIUS; x <= MAX_RADIUS; x++) {
+            for (int y = -MAX_RADIUS; y <= MAX_RADIUS; y++) {
+                for (int z = -MAX_RADIUS; z <= MAX_RADIUS; z++) {
+                    int expected = (long) x * x + (long) y * y + (long) z * z <= DiscreteCircle.square(MAX_RADIUS) ? 1 : 0;
+                    if (timesCovered[((x + MAX_RADIUS) * size + (y + MAX_RADIUS)) * size + (z + MAX_RADIUS)] != expected) {
+                        throw new IllegalStateException("Point (" + x + ", " + y + ", " + z + ") is not covered by exactly one shell");
+                    }
+                }
+            }
+        }
+
+        for (int shell = 0; shell < SHELL_COUNT; shell++) {
+            long ballPoints = 0;
+            for (int x = -shell; x <= shell; x++) {
+                for (int y = -shell; y <= shell; y++) {
+                    long remaining = DiscreteCircle.square(shell) - (long) x * x - (long) y * y;
+                    if (remaining >= 0) {
+                        ballPoints += 2L * DiscreteCircle.floorSqrt(remaining) + 1;
+                    }
+                }
+            }
+            if (shellEnd(shell) != ballPoints) {
+                throw new IllegalStateException("Shells up to " + shell + " hold " + shellEnd(shell) + " points, rather than " + ballPoints);
+            }
+        }
+    }
+
+    /**
+     * Packs an x/y/z offset into a single long - 16 bits for each of x, y and z.
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0xFFFF) << 32) | ((long) (y & 0xFFFF) << 16) | (z & 0xFFFF);
+    }
+
+    public static int unpackX(long packedOffset) {
+        return (short) (packedOffset >> 32);
+    }
+
+    public static int unpackY(long packedOffset) {
+        return (short) (packedOffset >> 16);
+    }
+
+    public static int unpackZ(long packedOffset) {
+        return (short) packedOffset;
+    }
+
+    /**
+     * @return the index in {@link #OFFSETS} of the first point of the shell
+     */
+    public static int shellStart(int shell) {
+        return SHELL_STARTS[shell];
+    }
+
+    /**
+     * @return the index in {@link #OFFSETS} after the last point of the shell
+     */
+    public static int shellEnd(int shell) {
+        return SHELL_STARTS[shell + 1];
+    }
+
+    /**
+     * Gets the absolute positions of the points of a shell around a center.
+     *
+     * @return the positions of the shell, packed with {@link BlockPos#asLong()}
+     */
+    public static long[] getAbsolutePositions(BlockPos center, int shell) {
+        int start = shellStart(shell);
+        long[] positions = new long[shellEnd(shell) - start];
+
+        for (int i = 0; i < positions.length; i++) {
+            long offset = OFFSETS[start + i];
+            positions[i] = BlockPos.asLong(center.getX() + unpackX(offset), center.getY() + unpackY(offset), center.getZ() + unpackZ(offset));
+        }
+        return positions;
+    }
+}
@@ -1,14 +1,19 @@
 package fred.exploregalore.util.math;
 
 /**
- * Provides a lookup table and associated methods for sine and cosine (in degrees) at 90 degree intervals.
- * CURRENTLY UNUSED
+ * Provides a lookup table and associated methods for sine and cosine (in degrees) at 90 degree intervals.<br>
+ * The integer versions take a number of quarter turns, and are exact - used for rotating block shapes.
  */
 public final class LookupTrig {
     public static final double[] SINE_90_DEGREES_TABLE;
+    public static final int[] SINE_QUARTER_TURNS_TABLE;
 
     static {
         SINE_90_DEGREES_TABLE = new double[]{0, 1, 0, -1};
+        SINE_QUARTER_TURNS_TABLE = new int[]{0, 1, 0, -1};
+    }
+
+    private LookupTrig() {
     }
 
     /**
@@ -30,4 +35,18 @@ public final class LookupTrig {
     public static double cos90Deg(double angle) {
         return sine90Deg(angle + 90);
     }
+
+    /**
+     * Returns sin(quarterTurns * 90 degrees). Negative turns are allowed.
+     */
+    public static int sineQuarterTurns(int quarterTurns) {
+        return SINE_QUARTER_TURNS_TABLE[quarterTurns & 3];
+    }
+
+    /**
+     * Returns cos(quarterTurns * 90 degrees). Negative turns are allowed.
+     */
+    public static int cosQuarterTurns(int quarterTurns) {
+        return sineQuarterTurns(quarterTurns + 1);
+    }
 }
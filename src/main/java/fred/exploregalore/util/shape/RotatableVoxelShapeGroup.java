@@ -1,161 +1,246 @@
 package fred.exploregalore.util.shape;
 
+import fred.exploregalore.util.math.LookupTrig;
 import net.minecraft.util.math.Box;
 import net.minecraft.util.math.Direction;
-import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.shape.VoxelShape;
-import net.minecraft.util.shape.VoxelShapes;
-
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
- * Holds a group of four VoxelShapes who are identical in shape, but rotated in pi/2 (90) angle intervals (i.e. in the four cardinal
- * directions). The axis of rotation is parallel to the y-axis, and passes through (8, 0, 8) - the center of a
- * 16 x 16 x 16 cube.<br><br>
+ * Holds a group of VoxelShapes who are identical in shape, but rotated in pi/2 (90) angle intervals.<br>
+ * By default, the group holds the four horizontal orientations (i.e. the four cardinal directions), rotated about a
+ * line parallel to the y-axis, which passes through (8, 0, 8) - the center of a 16 x 16 x 16 cube. Groups created with
+ * {@link #withAllOrientations(Box...)} also hold the shape facing up and down, each with four rolls - all 24
+ * orientations of a cube.<br><br>
  * The user passes in a series of cuboids/boxes that are to be constructed into the VoxelShape, and the program performs
- * the rotations and creates the four VoxelShapes.<br>
- * Note that the cuboids passed in should have vertexes that range from (0, 0, 0) to (16, 16, 16) - this class handles
- * the conversion to a percentage when creating the VoxelShape.
+ * the rotations and creates the VoxelShapes.<br>
+ * Note that the cuboids passed in should have vertexes that range from (0, 0, 0) to (16, 16, 16), on whole pixels -
+ * this class handles the conversion to a percentage when creating the VoxelShape. The rotations are done on the integer
+ * pixel coordinates, so they are exact: every orientation is made of exactly the same boxes, moved.
  */
 public class RotatableVoxelShapeGroup {
 
     /**
-     * The point at which the axis of rotation passes through. Note that we don't provide a <i>direction</i for the
-     * vector - this is because the rotation is always done parallel to the y-axis.
+     * The point (in pixels, on each axis) that the rotations are centered on.
+     */
+    public static final int ROTATION_CENTER;
+    /**
+     * The number of orientations of a cube - 6 facings, each with 4 rolls.
      */
-    public static final Vec3d ROTATION_AXIS_POINT = new Vec3d(8, 0, 8);
+    public static final int ORIENTATION_COUNT;
+    private static final int PIXELS_PER_BLOCK;
+    /**
+     * The number of ints used to store each box - min x/y/z, then max x/y/z.
+     */
+    private static final int BOX_LENGTH;
 
+    static {
+        ROTATION_CENTER = 8;
+        ORIENTATION_COUNT = 24;
+        PIXELS_PER_BLOCK = 16;
+        BOX_LENGTH = 6;
+    }
 
-    private final Map<Direction, VoxelShape> DIRECTIONAL_SHAPES;
+    /**
+     * The boxes of the default (north) orientation, in pixels.
+     */
+    private final int[] boxes;
+    /**
+     * Indexed by {@link Direction#getHorizontal()}.
+     */
+    private final VoxelShape[] horizontalShapes;
+    /**
+     * Indexed by {@link #getOrientationIndex(Direction, int)}, or null if the group only holds horizontal orientations.
+     */
+    private final VoxelShape[] orientedShapes;
 
 
     /**
      * Converts the boundingBoxes into 4 VoxelShapes, one for each cardinal direction.
      * Note: the North shape is the default shape, and thus experiences no rotation.
-     * @param boundingBoxes the boundingBoxes that make up the VoxelShape. Its vertices should range from (0, 0, 0) to
-     *                      (16, 16, 16) - as one would find in a .json model file. This class handles the conversion
-     *                      to a percentage when creating the final VoxelShapes.
+     * @param boundingBoxes the boundingBoxes that make up the VoxelShape. Its vertices should be whole numbers from
+     *                      (0, 0, 0) to (16, 16, 16) - as one would find in a .json model file. This class handles the
+     *                      conversion to a percentage when creating the final VoxelShapes.
      */
     public RotatableVoxelShapeGroup(Box... boundingBoxes) {
-        DIRECTIONAL_SHAPES = new HashMap<>();
+        this(toPixelBoxes(boundingBoxes), false);
+    }
 
-        DIRECTIONAL_SHAPES.put(Direction.NORTH, createVoxelShapeWithRotation(0, Direction.Axis.Y, ROTATION_AXIS_POINT, boundingBoxes));
-        DIRECTIONAL_SHAPES.put(Direction.SOUTH, createVoxelShapeWithRotation((float) Math.PI, Direction.Axis.Y, ROTATION_AXIS_POINT, boundingBoxes));
-        DIRECTIONAL_SHAPES.put(Direction.WEST, createVoxelShapeWithRotation((float) (Math.PI / 2.0), Direction.Axis.Y, ROTATION_AXIS_POINT, boundingBoxes));
-        DIRECTIONAL_SHAPES.put(Direction.EAST, createVoxelShapeWithRotation((float) (Math.PI * 3.0 / 2.0), Direction.Axis.Y, ROTATION_AXIS_POINT, boundingBoxes));
+    private RotatableVoxelShapeGroup(int[] boxes, boolean allOrientations) {
+        this.boxes = boxes;
+        this.horizontalShapes = new VoxelShape[4];
+
+        int[] rotatedBoxes = new int[this.boxes.length];
+        if (allOrientations) {
+            this.orientedShapes = new VoxelShape[ORIENTATION_COUNT];
+            for (Direction facing : Direction.values()) {
+                for (int roll = 0; roll < 4; roll++) {
+                    this.orientedShapes[getOrientationIndex(facing, roll)] = createVoxelShapeWithOrientation(facing, roll, rotatedBoxes);
+                }
+            }
+            for (Direction direction : Direction.Type.HORIZONTAL) {
+                this.horizontalShapes[direction.getHorizontal()] = this.orientedShapes[getOrientationIndex(direction, 0)];
+            }
+        } else {
+            this.orientedShapes = null;
+            for (Direction direction : Direction.Type.HORIZONTAL) {
+                this.horizontalShapes[direction.getHorizontal()] = createVoxelShapeWithOrientation(direction, 0, rotatedBoxes);
+            }
+        }
+    }
 
+    /**
+     * Creates a group from boxes that have already been rotated into each horizontal direction - no rotation is done.
+     *
+     * @param horizontalBoxes the pixel boxes (min x/y/z, then max x/y/z) of each horizontal direction, indexed by
+     *                        {@link Direction#getHorizontal()}
+     */
+    private RotatableVoxelShapeGroup(int[][] horizontalBoxes) {
+        this.boxes = horizontalBoxes[Direction.NORTH.getHorizontal()];
+        this.horizontalShapes = new VoxelShape[4];
+        this.orientedShapes = null;
+        for (int horizontal = 0; horizontal < 4; horizontal++) {
+            this.horizontalShapes[horizontal] = VoxelShapeCache.get(horizontalBoxes[horizontal]);
+        }
     }
 
-    public VoxelShape getShapeFromOrientation(Direction direction) {
-        return DIRECTIONAL_SHAPES.get(direction);
+    /**
+     * Creates a group holding all 24 orientations of the shape - see {@link #getShape(Direction, int)}.
+     */
+    public static RotatableVoxelShapeGroup withAllOrientations(Box... boundingBoxes) {
+        return new RotatableVoxelShapeGroup(toPixelBoxes(boundingBoxes), true);
     }
 
     /**
-     * Creates a VoxelShape provided an array of boundingBox. A few steps are performed to each boundingBox:
-     * <ol>
-     *     <li>
-     *         Rotates the box according to the specified angle.
-     *     </li>
-     *     <li>
-     *         Converts each box to a VoxelShape
-     *     </li>
-     *     <li>
-     *         Reduces the stream of VoxelShapes by unionising them together to create the final VoxelShape.
-     *     </li>
-     * </ol>
+     * Creates a group from shapes generated at build time, such as those in {@link GeneratedShapes}.
      *
-     * @param angle the angle, counterclockwise, that the boundingBox should be rotated to.
-     * @param axis the axis of which the rotation line is parallel to
-     * @param rotationLinePoint a point of which the rotation line intersects - note that to form a line, one needs a
-     *                          direction vector (which in this case is parallel to an axis), and a point that the
-     *                          line intersects.
-     * @param boundingBoxes the boxes of which the VoxelShape is to be created from
-     * @return the VoxelShape created from the rotated boundingBox.
+     * @param horizontalBoxes the pixel boxes (min x/y/z, then max x/y/z) of each horizontal direction, indexed by
+     *                        {@link Direction#getHorizontal()}
      */
-    private VoxelShape createVoxelShapeWithRotation(float angle, Direction.Axis axis, Vec3d rotationLinePoint, Box... boundingBoxes) {
-
-        return
-                Arrays.stream(boundingBoxes)
-                        .map(box -> rotateBoxAroundAxis(angle, axis, rotationLinePoint, box)) // rotation by 180 deg ccw
-                        .map(box -> VoxelShapes.cuboidUnchecked(box.minX / 16.0D, box.minY / 16.0D, box.minZ / 16.0D, box.maxX / 16.0D, box.maxY / 16.0D, box.maxZ / 16.0D)) // conversion to VoxelShape
-                        .reduce(VoxelShapes.empty(), VoxelShapes::union); // combining the VoxelShapes
-
-
-     /*   return switch (direction) {
-            case SOUTH -> Arrays.stream(boundingBoxes)
-                    .map(box -> rotateBoxAroundAxis((float) Math.PI, Direction.Axis.Y, rotationLinePoint, box)) // rotation by 180 deg ccw
-                    .map(VoxelShapes::cuboid) // conversion to VoxelShape
-                    .reduce(VoxelShapes.empty(), VoxelShapes::union); // combining the VoxelShapes
-
-            case EAST -> Arrays.stream(boundingBoxes)
-                    .map(box -> rotateBoxAroundAxis((float) (Math.PI / 2), Direction.Axis.Y, rotationLinePoint, box)) // rotation by 90 deg ccw
-                    .map(VoxelShapes::cuboid) // conversion to VoxelShape
-                    .reduce(VoxelShapes.empty(), VoxelShapes::union); // combining the VoxelShapes
-
-            case WEST -> Arrays.stream(boundingBoxes)
-                    .map(box -> rotateBoxAroundAxis((float) (3 / 2 * Math.PI), Direction.Axis.Y, rotationLinePoint, box)) // rotation by 270 deg ccw
-                    .map(VoxelShapes::cuboid) // conversion to VoxelShape
-                    .reduce(VoxelShapes.empty(), VoxelShapes::union); // combining the VoxelShapes
-            // Default is used for NORTH (and for any other directions that technically shouldn't be passed in.
-            default -> Arrays.stream(boundingBoxes)
-                    .map(VoxelShapes::cuboid) // conversion to VoxelShape (no rotation; NORTH is the default orientation)
-                    .reduce(VoxelShapes.empty(), VoxelShapes::union); // combining the VoxelShapes
-
-        };*/
+    public static RotatableVoxelShapeGroup fromHorizontalBoxes(int[][] horizontalBoxes) {
+        if (horizontalBoxes.length != 4) {
+            throw new IllegalArgumentException("Expected boxes for 4 horizontal directions, got " + horizontalBoxes.length);
+        }
+        return new RotatableVoxelShapeGroup(horizontalBoxes);
     }
 
+    /**
+     * @param direction a horizontal direction
+     */
+    public VoxelShape getShapeFromOrientation(Direction direction) {
+        return this.horizontalShapes[direction.getHorizontal()];
+    }
 
     /**
-     * Rotates a cuboid about a rotation line. The rotation line must be parallel to the x or y or z axis.
+     * Gets the shape in any of the 24 orientations of a cube. Only available for groups created with
+     * {@link #withAllOrientations(Box...)}.
      *
-     * @param axis              the axis that the rotation line is parallel to
-     * @param rotationLinePoint the point at which the rotation line passes through
-     * @return a box whose points have been rotated about the specified line.
+     * @param facing the direction the shape's front (its north side, by default) faces
+     * @param roll   the number of quarter turns the shape is rolled about its front, counterclockwise when looking at the front
      */
-    private Box rotateBoxAroundAxis(float angle, Direction.Axis axis, Vec3d rotationLinePoint, Box box) {
-        Vec3d rotatedCorner1 = rotatePointAroundAxis(angle, axis, new Vec3d(box.minX, box.minY, box.minZ), rotationLinePoint);
-        Vec3d rotatedCorner2 = rotatePointAroundAxis(angle, axis, new Vec3d(box.maxX, box.maxY, box.maxZ), rotationLinePoint);
+    public VoxelShape getShape(Direction facing, int roll) {
+        if (this.orientedShapes == null) {
+            throw new IllegalStateException("Shape group was only created with horizontal orientations");
+        }
+        return this.orientedShapes[getOrientationIndex(facing, roll)];
+    }
 
-        return new Box(rotatedCorner1, rotatedCorner2);
+    public static int getOrientationIndex(Direction facing, int roll) {
+        return facing.getId() * 4 + (roll & 3);
     }
 
     /**
-     * Rotates a point around a given line (that is parallel to an axis) by a specified angle. To accomplish this, a few transformations are done:
+     * Creates a VoxelShape in the given orientation. A few steps are performed to each box:
      * <ol>
      *     <li>
-     *         The point is translated such that the rotation line now lies on the origin.
+     *         Rolls the box about the z-axis (the front of the shape faces north).
      *     </li>
      *     <li>
-     *         The point is rotated about the specified x, y, or z axis
+     *         Turns the box so that its front faces the given direction - about the y-axis for horizontal directions, or
+     *         about the x-axis for up and down.
      *     </li>
      *     <li>
-     *         The point is translated 'back', such that the rotation line is now at its original position.
+     *         Gets the VoxelShape made of the rotated boxes from the shared {@link VoxelShapeCache} - identical shapes
+     *         (such as the rotations of a symmetric shape) are the same instance.
      *     </li>
      * </ol>
      *
-     * @param angle             the angle to rotate the point by
-     * @param axis              the axis of which the point is to be rotated counterclockwise by
-     * @param point             the point to be rotated
-     * @param rotationLinePoint a point in which the rotation lines passes through
-     * @return the rotated point's coordinates
+     * @param rotatedBoxes scratch space, as long as the boxes
+     */
+    private VoxelShape createVoxelShapeWithOrientation(Direction facing, int roll, int[] rotatedBoxes) {
+        System.arraycopy(this.boxes, 0, rotatedBoxes, 0, this.boxes.length);
+
+        rotateBoxes(rotatedBoxes, Direction.Axis.Z, roll);
+        switch (facing) {
+            // Quarter turns counterclockwise (looking down), as for Vec3d#rotateY
+            case NORTH -> { }
+            case WEST -> rotateBoxes(rotatedBoxes, Direction.Axis.Y, 1);
+            case SOUTH -> rotateBoxes(rotatedBoxes, Direction.Axis.Y, 2);
+            case EAST -> rotateBoxes(rotatedBoxes, Direction.Axis.Y, 3);
+            case UP -> rotateBoxes(rotatedBoxes, Direction.Axis.X, 3);
+            case DOWN -> rotateBoxes(rotatedBoxes, Direction.Axis.X, 1);
+        }
+
+        return VoxelShapeCache.get(rotatedBoxes);
+    }
+
+    /**
+     * Rotates every box, in place, about a line through the center of the cube, parallel to the axis. The rotation is
+     * done in the same direction as {@code Vec3d#rotateX/Y/Z}, but on the integer coordinates of the box's corners.
      */
-    private Vec3d rotatePointAroundAxis(float angle, Direction.Axis axis, Vec3d point, Vec3d rotationLinePoint) {
-        return switch (axis) {
-            case X -> point.subtract(rotationLinePoint)
-                    .rotateX(angle)
-                    .add(rotationLinePoint);
-
-            case Y -> point.subtract(rotationLinePoint)
-                    .rotateY(angle)
-                    .add(rotationLinePoint);
-
-            case Z -> point.subtract(rotationLinePoint)
-                    .rotateZ(angle)
-                    .add(rotationLinePoint);
-        };
+    private static void rotateBoxes(int[] boxes, Direction.Axis axis, int quarterTurns) {
+        if ((quarterTurns & 3) == 0) {
+            return;
+        }
+        int sine = LookupTrig.sineQuarterTurns(quarterTurns);
+        int cosine = LookupTrig.cosQuarterTurns(quarterTurns);
+
+        // The two coordinates that change, as offsets into the box - (y, z) about x, (x, z) about y and (x, y) about z
+        int first = axis == Direction.Axis.X ? 1 : 0;
+        int second = axis == Direction.Axis.Z ? 1 : 2;
+
+        for (int i = 0; i < boxes.length; i += BOX_LENGTH) {
+            int minA = boxes[i + first] - ROTATION_CENTER;
+            int minB = boxes[i + second] - ROTATION_CENTER;
+            int maxA = boxes[i + 3 + first] - ROTATION_CENTER;
+            int maxB = boxes[i + 3 + second] - ROTATION_CENTER;
+
+            int rotatedMinA = minA * cosine + minB * sine;
+            int rotatedMinB = minB * cosine - minA * sine;
+            int rotatedMaxA = maxA * cosine + maxB * sine;
+            int rotatedMaxB = maxB * cosine - maxA * sine;
+
+            // The corners may have swapped, so min and max are taken again
+            boxes[i + first] = Math.min(rotatedMinA, rotatedMaxA) + ROTATION_CENTER;
+            boxes[i + 3 + first] = Math.max(rotatedMinA, rotatedMaxA) + ROTATION_CENTER;
+            boxes[i + second] = Math.min(rotatedMinB, rotatedMaxB) + ROTATION_CENTER;
+            boxes[i + 3 + second] = Math.max(rotatedMinB, rotatedMaxB) + ROTATION_CENTER;
+        }
     }
 
+    /**
+     * Converts the boxes to whole pixel coordinates.
+     *
+     * @throws IllegalArgumentException if a box isn't on whole pixels, or doesn't fit in the cube
+     */
+    private static int[] toPixelBoxes(Box... boundingBoxes) {
+        int[] boxes = new int[boundingBoxes.length * BOX_LENGTH];
+        for (int i = 0; i < boundingBoxes.length; i++) {
+            Box box = boundingBoxes[i];
+            boxes[i * BOX_LENGTH] = toPixel(box.minX, box);
+            boxes[i * BOX_LENGTH + 1] = toPixel(box.minY, box);
+            boxes[i * BOX_LENGTH + 2] = toPixel(box.minZ, box);
+            boxes[i * BOX_LENGTH + 3] = toPixel(box.maxX, box);
+            boxes[i * BOX_LENGTH + 4] = toPixel(box.maxY, box);
+            boxes[i * BOX_LENGTH + 5] = toPixel(box.maxZ, box);
+        }
+        return boxes;
+    }
 
+    private static int toPixel(double coordinate, Box box) {
+        int pixel = (int) coordinate;
+        if (pixel != coordinate || pixel < 0 || pixel > PIXELS_PER_BLOCK) {
+            throw new IllegalArgumentException("Shape box " + box + " is not on whole pixels within the block");
+        }
+        return pixel;
+    }
 }
@@ -0,0 +1,102 @@
+package fred.exploregalore.util.shape;
+
+import net.minecraft.util.function.BooleanBiFunction;
+import net.minecraft.util.shape.VoxelShape;
+import net.minecraft.util.shape.VoxelShapes;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the VoxelShapes built from boxes of whole pixels, so that every shape group asking for the same boxes - such
+ * as the rotations of a rotationally symmetric shape, or two lily parts sharing a stem - gets the very same instance.
+ * Besides saving memory, shared instances make the game's own shape caches (which compare shapes by identity) hit more
+ * often.<br>
+ * Shapes are keyed by their canonical box list: the boxes sorted, with duplicates removed. Each shape's boxes are
+ * combined without simplifying, then simplified once.
+ */
+public final class VoxelShapeCache {
+
+    private static final int BOX_LENGTH;
+    private static final ConcurrentHashMap<BoxList, VoxelShape> SHAPES;
+
+    static {
+        BOX_LENGTH = 6;
+        SHAPES = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * A canonical list of boxes, 6 ints (min x/y/z, max x/y/z) per box.
+     */
+    private record BoxList(int[] boxes) {
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof BoxList other && Arrays.equals(this.boxes, other.boxes));
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.boxes);
+        }
+    }
+
+    private VoxelShapeCache() {
+    }
+
+    /**
+     * @param pixelBoxes 6 ints per box - min x/y/z then max x/y/z, in pixels from 0 to 16. The array isn't kept or
+     *                   modified.
+     * @return the shared shape made of the boxes
+     */
+    public static VoxelShape get(int[] pixelBoxes) {
+        BoxList key = new BoxList(canonicalize(pixelBoxes));
+        VoxelShape shape = SHAPES.get(key);
+        return shape != null ? shape : SHAPES.computeIfAbsent(key, boxList -> createShape(boxList.boxes()));
+    }
+
+    /**
+     * @return the number of distinct shapes interned
+     */
+    public static int size() {
+        return SHAPES.size();
+    }
+
+    private static VoxelShape createShape(int[] boxes) {
+        VoxelShape shape = VoxelShapes.empty();
+        for (int i = 0; i < boxes.length; i += BOX_LENGTH) {
+            shape = VoxelShapes.combine(shape, VoxelShapes.cuboidUnchecked(
+                    boxes[i] / 16.0D, boxes[i + 1] / 16.0D, boxes[i + 2] / 16.0D,
+                    boxes[i + 3] / 16.0D, boxes[i + 4] / 16.0D, boxes[i + 5] / 16.0D), BooleanBiFunction.OR);
+        }
+        return shape.simplify();
+    }
+
+    /**
+     * Sorts a copy of the boxes, and drops any duplicate boxes. Shapes have a handful of boxes, so an insertion sort is
+     * used.
+     */
+    private static int[] canonicalize(int[] pixelBoxes) {
+        int[] boxes = pixelBoxes.clone();
+        int boxCount = boxes.length / BOX_LENGTH;
+        int[] box = new int[BOX_LENGTH];
+
+        for (int i = 1; i < boxCount; i++) {
+            System.arraycopy(boxes, i * BOX_LENGTH, box, 0, BOX_LENGTH);
+            int j = i - 1;
+            while (j >= 0 && Arrays.compare(boxes, j * BOX_LENGTH, (j + 1) * BOX_LENGTH, box, 0, BOX_LENGTH) > 0) {
+                System.arraycopy(boxes, j * BOX_LENGTH, boxes, (j + 1) * BOX_LENGTH, BOX_LENGTH);
+                j--;
+            }
+            System.arraycopy(box, 0, boxes, (j + 1) * BOX_LENGTH, BOX_LENGTH);
+        }
+
+        int uniqueCount = boxCount == 0 ? 0 : 1;
+        for (int i = 1; i < boxCount; i++) {
+            if (Arrays.compare(boxes, i * BOX_LENGTH, (i + 1) * BOX_LENGTH, boxes, (uniqueCount - 1) * BOX_LENGTH, uniqueCount * BOX_LENGTH) != 0) {
+                System.arraycopy(boxes, i * BOX_LENGTH, boxes, uniqueCount * BOX_LENGTH, BOX_LENGTH);
+                uniqueCount++;
+            }
+        }
+        return uniqueCount == boxCount ? boxes : Arrays.copyOf(boxes, uniqueCount * BOX_LENGTH);
+    }
+}
@@ -0,0 +1,281 @@
+package fred.exploregalore.world;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.WorldChunk;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Saves the Moon Stone state of a chunk - the ripples centered in it, and the extinguish deadlines of its lit blocks -
+ * with the chunk's NBT, and restores it when the chunk loads again, so that no Moon Stone is left lit for good:
+ * <ol>
+ *     <li>Ripples that were still spreading are resumed from their original start time, so any rings that would have
+ *     been lit while the chunk was unloaded are skipped over.</li>
+ *     <li>Lit blocks get their deadline back (see {@link MoonStoneExtinguishDeadlines}). Blocks whose
+ *     deadline passed while the chunk was unloaded are all extinguished at once, in the same batched section write
+ *     (see {@link MoonStoneSectionWriter}), rather than each being checked for entities on top.</li>
+ *     <li>Any other lit Moon Stone in the chunk (from before this was saved) is given a fresh deadline.</li>
+ * </ol>
+ * The data is stored under {@link #NBT_KEY} in the chunk's "Level" compound as two long arrays:
+ * <ul>
+ *     <li>"Ripples" - (center, start time, max radius &lt;&lt; 1 | spherical) for each ripple</li>
+ *     <li>"Deadlines" - (block, deadline) for each lit block</li>
+ * </ul>
+ * Positions are packed with {@link BlockPos#asLong()}, and times are absolute world times.
+ */
+public class MoonStoneChunkPersistence {
+
+    public static final String NBT_KEY;
+    private static final String RIPPLES_KEY;
+    private static final String DEADLINES_KEY;
+    /**
+     * How long the state of an unloaded chunk is kept around, waiting for the chunk to be saved. Unchanged chunks
+     * aren't saved on unload at all.<br>
+     * Also how often the chunks that were read, but never finished loading, are checked for having been dropped.
+     */
+    private static final int UNLOADED_RETENTION_TICKS;
+
+    private static final Predicate<BlockState> IS_LIT_MOON_STONE = state -> state.getBlock() instanceof MoonStoneBlock && MoonStoneBlock.isLit(state);
+
+    static {
+        NBT_KEY = "ExploreGaloreMoonStone";
+        RIPPLES_KEY = "Ripples";
+        DEADLINES_KEY = "Deadlines";
+        UNLOADED_RETENTION_TICKS = 200;
+    }
+
+    /**
+     * The state of a chunk that has been unloaded, but may not have been saved yet.
+     */
+    private record UnloadedChunk(NbtCompound data, long unloadTime) {
+    }
+
+    /**
+     * The state read from a chunk's NBT, waiting for the chunk to finish loading.
+     */
+    private record PendingLoad(NbtCompound data, long readTime) {
+    }
+
+    private final ServerWorld world;
+    private final MoonStoneRippleScheduler rippleScheduler;
+    private final MoonStoneExtinguishDeadlines extinguishDeadlines;
+    private final MoonStoneSectionWriter sectionWriter;
+    private final MoonStoneStats stats;
+    /**
+     * Chunk -> the state read from its NBT, waiting for the chunk to finish loading. Chunks on the border of the loaded
+     * area are read, but may never finish loading (or fire an unload) before they're dropped - their entries are
+     * removed by {@link #tick(long)} once the chunk is gone.
+     */
+    private final Long2ObjectOpenHashMap<PendingLoad> pendingLoads;
+    private final Long2ObjectOpenHashMap<UnloadedChunk> unloadedChunks;
+    /**
+     * The blocks of the chunk being loaded that are queued to be extinguished.
+     */
+    private final LongOpenHashSet expiredPositions;
+    private final BlockPos.Mutable mutablePos;
+
+    public MoonStoneChunkPersistence(ServerWorld world, MoonStoneRippleScheduler rippleScheduler, MoonStoneExtinguishDeadlines extinguishDeadlines,
+                                     MoonStoneSectionWriter sectionWriter, MoonStoneStats stats) {
+        this.world = world;
+        this.rippleScheduler = rippleScheduler;
+        this.extinguishDeadlines = extinguishDeadlines;
+        this.sectionWriter = sectionWriter;
+        this.stats = stats;
+        this.pendingLoads = new Long2ObjectOpenHashMap<>();
+        this.unloadedChunks = new Long2ObjectOpenHashMap<>();
+        this.expiredPositions = new LongOpenHashSet();
+        this.mutablePos = new BlockPos.Mutable();
+    }
+
+    /**
+     * Called when a chunk is serialized.
+     *
+     * @return the chunk's Moon Stone state, or null if it has none
+     */
+    public NbtCompound writeChunk(ChunkPos chunkPos) {
+        long chunk = chunkPos.toLong();
+
+        UnloadedChunk unloadedChunk = this.unloadedChunks.remove(chunk);
+        if (unloadedChunk != null) {
+            return unloadedChunk.data();
+        }
+        // The chunk was read but never finished loading, so its state was never restored
+        PendingLoad pendingLoad = this.pendingLoads.get(chunk);
+        if (pendingLoad != null) {
+            return pendingLoad.data();
+        }
+        return captureChunk(chunkPos);
+    }
+
+    /**
+     * Called when a chunk is deserialized. The state is only restored once the chunk has fully loaded.
+     */
+    public void readChunk(ChunkPos chunkPos, NbtCompound data) {
+        this.pendingLoads.put(chunkPos.toLong(), new PendingLoad(data, this.world.getTime()));
+    }
+
+    public void loadChunk(WorldChunk chunk) {
+        ChunkPos chunkPos = chunk.getPos();
+        PendingLoad pendingLoad = this.pendingLoads.remove(chunkPos.toLong());
+        UnloadedChunk unloadedChunk = this.unloadedChunks.remove(chunkPos.toLong());
+        NbtCompound data = pendingLoad != null ? pendingLoad.data() : null;
+        if (data == null && unloadedChunk != null) {
+            data = unloadedChunk.data();
+        }
+
+        if (data != null) {
+            restoreRipples(data.getLongArray(RIPPLES_KEY));
+            restoreDeadlines(chunk, data.getLongArray(DEADLINES_KEY));
+        }
+        assignMissingDeadlines(chunk);
+        this.expiredPositions.clear();
+    }
+
+    /**
+     * Drops the chunk's state from the world, keeping a copy until the chunk has been saved.
+     */
+    public void unloadChunk(ChunkPos chunkPos) {
+        NbtCompound data = captureChunk(chunkPos);
+        this.rippleScheduler.unloadChunk(chunkPos);
+        this.extinguishDeadlines.removeChunk(chunkPos);
+
+        if (data != null) {
+            this.unloadedChunks.put(chunkPos.toLong(), new UnloadedChunk(data, this.world.getTime()));
+        }
+    }
+
+    public void tick(long time) {
+        expireUnloadedChunks(time);
+        if (time % UNLOADED_RETENTION_TICKS == 0) {
+            expirePendingLoads(time);
+        }
+    }
+
+    private void expireUnloadedChunks(long time) {
+        if (this.unloadedChunks.isEmpty()) {
+            return;
+        }
+
+        ObjectIterator<Long2ObjectMap.Entry<UnloadedChunk>> iterator = this.unloadedChunks.long2ObjectEntrySet().fastIterator();
+        while (iterator.hasNext()) {
+            if (time - iterator.next().getValue().unloadTime() > UNLOADED_RETENTION_TICKS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the state of the chunks that were read, but dropped by the chunk manager without ever finishing loading.
+     * Nothing is lost, as the state is still in the chunk's NBT on disk - unless the chunk was saved, in which case
+     * {@link #writeChunk(ChunkPos)} wrote it back.
+     */
+    private void expirePendingLoads(long time) {
+        if (this.pendingLoads.isEmpty()) {
+            return;
+        }
+
+        ObjectIterator<Long2ObjectMap.Entry<PendingLoad>> iterator = this.pendingLoads.long2ObjectEntrySet().fastIterator();
+        while (iterator.hasNext()) {
+            Long2ObjectMap.Entry<PendingLoad> entry = iterator.next();
+            if (time - entry.getValue().readTime() <= UNLOADED_RETENTION_TICKS) {
+                continue;
+            }
+            // Without create, only a chunk the chunk manager still holds (at any status) is returned - nothing is loaded
+            long chunk = entry.getLongKey();
+            if (this.world.getChunkManager().getChunk(ChunkPos.getPackedX(chunk), ChunkPos.getPackedZ(chunk), ChunkStatus.EMPTY, false) == null) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private NbtCompound captureChunk(ChunkPos chunkPos) {
+        List<MoonStoneRippleScheduler.Ripple> ripples = this.rippleScheduler.getRipplesCenteredIn(chunkPos);
+        Long2LongOpenHashMap deadlines = this.extinguishDeadlines.getChunkDeadlines(chunkPos);
+        if (ripples.isEmpty() && deadlines == null) {
+            return null;
+        }
+
+        NbtCompound data = new NbtCompound();
+        if (!ripples.isEmpty()) {
+            long[] packedRipples = new long[ripples.size() * 3];
+            for (int i = 0; i < ripples.size(); i++) {
+                MoonStoneRippleScheduler.Ripple ripple = ripples.get(i);
+                packedRipples[i * 3] = ripple.center();
+                packedRipples[i * 3 + 1] = ripple.startTick();
+                packedRipples[i * 3 + 2] = (long) ripple.maxRadius() << 1 | (ripple.spherical() ? 1L : 0L);
+            }
+            data.putLongArray(RIPPLES_KEY, packedRipples);
+        }
+        if (deadlines != null) {
+            long[] packedDeadlines = new long[deadlines.size() * 2];
+            int i = 0;
+            ObjectIterator<Long2LongMap.Entry> iterator = deadlines.long2LongEntrySet().fastIterator();
+            while (iterator.hasNext()) {
+                Long2LongMap.Entry deadline = iterator.next();
+                packedDeadlines[i++] = deadline.getLongKey();
+                packedDeadlines[i++] = deadline.getLongValue();
+            }
+            data.putLongArray(DEADLINES_KEY, packedDeadlines);
+        }
+        return data;
+    }
+
+    private void restoreRipples(long[] packedRipples) {
+        for (int i = 0; i + 2 < packedRipples.length; i += 3) {
+            this.rippleScheduler.resumeRipple(new MoonStoneRippleScheduler.Ripple(
+                    packedRipples[i], packedRipples[i + 1], (int) (packedRipples[i + 2] >>> 1), (packedRipples[i + 2] & 1L) != 0));
+        }
+    }
+
+    private void restoreDeadlines(WorldChunk chunk, long[] packedDeadlines) {
+        long time = this.world.getTime();
+
+        for (int i = 0; i + 1 < packedDeadlines.length; i += 2) {
+            // Read from the chunk itself, as the world may not hand it out until it has finished loading
+            this.mutablePos.set(packedDeadlines[i]);
+            BlockState state = chunk.getBlockState(this.mutablePos);
+
+            if (!IS_LIT_MOON_STONE.test(state)) {
+                continue;
+            }
+
+            long deadline = packedDeadlines[i + 1];
+            if (deadline <= time) {
+                // Written with every other transition at the end of the tick. Any (old) vanilla tick still saved for
+                // the block finds it unlit, and does nothing.
+                this.sectionWriter.queue(this.mutablePos, false);
+                this.expiredPositions.add(this.mutablePos.asLong());
+                this.stats.increment(MoonStoneStats.Counter.LOAD_EXTINGUISHES);
+            } else {
+                this.extinguishDeadlines.set(this.mutablePos, deadline);
+            }
+        }
+    }
+
+    /**
+     * Gives a deadline to any lit Moon Stone in the chunk without one.
+     */
+    private void assignMissingDeadlines(WorldChunk chunk) {
+        long deadline = this.world.getTime() + MoonStoneBlock.LIT_TIME;
+
+        MoonStonePresenceIndex.forEachMatchingBlock(chunk, IS_LIT_MOON_STONE, (x, y, z) -> {
+            this.mutablePos.set(x, y, z);
+            if (!this.extinguishDeadlines.contains(this.mutablePos) && !this.expiredPositions.contains(this.mutablePos.asLong())) {
+                this.extinguishDeadlines.set(this.mutablePos, deadline);
+            }
+        });
+    }
+}
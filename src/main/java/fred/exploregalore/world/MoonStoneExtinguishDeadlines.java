@@ -0,0 +1,159 @@
+package fred.exploregalore.world;
+
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Records when each lit Moon Stone block in the loaded chunks is due to go out, as an absolute world time, and hands
+ * out the blocks that are due each tick. This replaces a vanilla scheduled tick per lit block.<br>
+ * The deadlines are kept in two structures:
+ * <ol>
+ *     <li>A map grouped by chunk, which holds the actual deadline of each block - so that a chunk's deadlines can be
+ *     saved with it (see {@link MoonStoneChunkPersistence}) and dropped when it unloads.</li>
+ *     <li>A hashed timing wheel of {@link #WHEEL_SLOTS} slots, one per tick modulo {@link #WHEEL_SLOTS}, each a list of
+ *     packed block positions. Setting a deadline appends the block to the deadline's slot - O(1), with no sorted set
+ *     to rebalance - and each tick only the current slot is drained.</li>
+ * </ol>
+ * Refreshing or removing a deadline doesn't search the wheel for the old entry. It is left in place, and discarded
+ * when its slot is drained if the map no longer holds a deadline for that slot.
+ */
+public class MoonStoneExtinguishDeadlines {
+
+    /**
+     * The number of slots in the wheel - a power of two, longer than {@link fred.exploregalore.blocks.MoonStoneBlock#LIT_TIME}
+     * so that nearly every deadline is due on the first pass over its slot.
+     */
+    public static final int WHEEL_SLOTS;
+    private static final int SLOT_MASK;
+    private static final long NO_DEADLINE;
+
+    static {
+        WHEEL_SLOTS = 64;
+        SLOT_MASK = WHEEL_SLOTS - 1;
+        NO_DEADLINE = Long.MIN_VALUE;
+    }
+
+    /**
+     * Chunk (packed with {@link ChunkPos#toLong(int, int)}) -> block (packed with {@link BlockPos#asLong()}) -> the
+     * world time at which the block is due to go out.
+     */
+    private final Long2ObjectOpenHashMap<Long2LongOpenHashMap> deadlinesByChunk;
+    private final LongArrayList[] wheel;
+    private long lastDrainTime;
+
+    public MoonStoneExtinguishDeadlines() {
+        this.deadlinesByChunk = new Long2ObjectOpenHashMap<>();
+        this.wheel = new LongArrayList[WHEEL_SLOTS];
+        for (int slot = 0; slot < WHEEL_SLOTS; slot++) {
+            this.wheel[slot] = new LongArrayList();
+        }
+        this.lastDrainTime = NO_DEADLINE;
+    }
+
+    /**
+     * Sets (or refreshes) the block's deadline. A deadline that has already been drained past is due on the next drain.
+     */
+    public void set(BlockPos pos, long deadline) {
+        if (this.lastDrainTime != NO_DEADLINE) {
+            deadline = Math.max(deadline, this.lastDrainTime + 1);
+        }
+
+        long packedPos = pos.asLong();
+        Long2LongOpenHashMap chunkDeadlines = this.deadlinesByChunk.computeIfAbsent(chunkOf(pos), chunk -> newChunkDeadlines());
+        long previousDeadline = chunkDeadlines.put(packedPos, deadline);
+
+        // If the block is already in the slot, its entry there is reused
+        if (previousDeadline == NO_DEADLINE || slotOf(previousDeadline) != slotOf(deadline)) {
+            this.wheel[slotOf(deadline)].add(packedPos);
+        }
+    }
+
+    public void remove(BlockPos pos) {
+        long chunk = chunkOf(pos);
+        Long2LongOpenHashMap chunkDeadlines = this.deadlinesByChunk.get(chunk);
+
+        if (chunkDeadlines != null) {
+            chunkDeadlines.remove(pos.asLong());
+            if (chunkDeadlines.isEmpty()) {
+                this.deadlinesByChunk.remove(chunk);
+            }
+        }
+    }
+
+    public boolean contains(BlockPos pos) {
+        Long2LongOpenHashMap chunkDeadlines = this.deadlinesByChunk.get(chunkOf(pos));
+        return chunkDeadlines != null && chunkDeadlines.containsKey(pos.asLong());
+    }
+
+    /**
+     * Removes the deadlines that are due by the given time, and adds their blocks to {@code due}.
+     */
+    public void drainDue(long time, LongArrayList due) {
+        // Normally a single slot - but if ticks were missed, every slot since the last drain (at most a full turn)
+        long firstTick = this.lastDrainTime == NO_DEADLINE ? time - SLOT_MASK : Math.max(this.lastDrainTime + 1, time - SLOT_MASK);
+
+        for (long tick = firstTick; tick <= time; tick++) {
+            LongArrayList slot = this.wheel[slotOf(tick)];
+            int kept = 0;
+
+            for (int i = 0, size = slot.size(); i < size; i++) {
+                long packedPos = slot.getLong(i);
+                long chunk = ChunkPos.toLong(BlockPos.unpackLongX(packedPos) >> 4, BlockPos.unpackLongZ(packedPos) >> 4);
+                Long2LongOpenHashMap chunkDeadlines = this.deadlinesByChunk.get(chunk);
+                long deadline = chunkDeadlines == null ? NO_DEADLINE : chunkDeadlines.get(packedPos);
+
+                // Stale entries - removed, or refreshed into another slot
+                if (deadline == NO_DEADLINE || slotOf(deadline) != slotOf(tick)) {
+                    continue;
+                }
+
+                if (deadline <= time) {
+                    chunkDeadlines.remove(packedPos);
+                    if (chunkDeadlines.isEmpty()) {
+                        this.deadlinesByChunk.remove(chunk);
+                    }
+                    due.add(packedPos);
+                } else {
+                    // Due on a later turn of the wheel
+                    slot.set(kept++, packedPos);
+                }
+            }
+            slot.size(kept);
+        }
+        this.lastDrainTime = time;
+    }
+
+    /**
+     * @return the deadlines of the chunk's blocks, or null if it has none. The map must not be modified.
+     */
+    public Long2LongOpenHashMap getChunkDeadlines(ChunkPos chunkPos) {
+        return this.deadlinesByChunk.get(chunkPos.toLong());
+    }
+
+    /**
+     * Drops the deadlines of a chunk that is being unloaded. Their entries in the wheel are discarded as they are
+     * drained.
+     *
+     * @return the chunk's deadlines, or null if it had none
+     */
+    public Long2LongOpenHashMap removeChunk(ChunkPos chunkPos) {
+        return this.deadlinesByChunk.remove(chunkPos.toLong());
+    }
+
+    private static Long2LongOpenHashMap newChunkDeadlines() {
+        Long2LongOpenHashMap chunkDeadlines = new Long2LongOpenHashMap();
+        chunkDeadlines.defaultReturnValue(NO_DEADLINE);
+        return chunkDeadlines;
+    }
+
+    private static int slotOf(long tick) {
+        return (int) (tick & SLOT_MASK);
+    }
+
+    private static long chunkOf(BlockPos pos) {
+        return ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+    }
+}
@@ -0,0 +1,141 @@
+package fred.exploregalore.world;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectCollection;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.LivingEntity;
+
+/**
+ * Tracks the motion of the living entities that are near Moon Stone blocks.<br>
+ * The server does not store the previous position of player entities, so we save it ourselves. Rather than adding
+ * fields to every entity in the game, a side table keyed by entity id is kept, and only living entities that have
+ * stepped or landed on a Moon Stone block are added to it. Entries are removed when:
+ * <ol>
+ *     <li>The entity hasn't touched a Moon Stone block for {@link #TRACKING_GRACE_TICKS} ticks.</li>
+ *     <li>The entity is unloaded or removed from the world.</li>
+ * </ol>
+ * The tracker is given the world time rather than the world itself, so that it can run outside a world (as in the
+ * benchmarks).
+ */
+public class MoonStoneMotionTracker {
+
+    /**
+     * How long an entity stays tracked after last touching a Moon Stone block. Matches the time a block stays lit, so
+     * an entity is tracked for as long as it can keep a block lit.
+     */
+    public static final int TRACKING_GRACE_TICKS = MoonStoneBlock.LIT_TIME;
+
+    /**
+     * The motion state of a single tracked entity.
+     */
+    public static final class TrackedEntity {
+        private final LivingEntity entity;
+        private double prevX;
+        private double prevZ;
+        private double horizontalSpeedSquared;
+        private long lastTouchedTime;
+
+        private TrackedEntity(LivingEntity entity, long time) {
+            this.entity = entity;
+            this.prevX = entity.getX();
+            this.prevZ = entity.getZ();
+            this.horizontalSpeedSquared = 0;
+            this.lastTouchedTime = time;
+        }
+
+        /**
+         * Saves the current position, and computes how far the entity moved horizontally since the last tick.
+         */
+        private void updateMotion() {
+            double x = this.entity.getX();
+            double z = this.entity.getZ();
+            double deltaX = x - this.prevX;
+            double deltaZ = z - this.prevZ;
+
+            this.horizontalSpeedSquared = deltaX * deltaX + deltaZ * deltaZ;
+            this.prevX = x;
+            this.prevZ = z;
+        }
+
+        public LivingEntity getEntity() {
+            return entity;
+        }
+
+        /**
+         * The squared horizontal (x/z) distance the entity moved during the last tick.
+         */
+        public double getHorizontalSpeedSquared() {
+            return horizontalSpeedSquared;
+        }
+    }
+
+    private final Int2ObjectOpenHashMap<TrackedEntity> trackedEntities;
+
+    public MoonStoneMotionTracker() {
+        this.trackedEntities = new Int2ObjectOpenHashMap<>();
+    }
+
+    /**
+     * Starts tracking the entity, or keeps tracking it if it already is. Called whenever the entity touches a Moon Stone
+     * block.
+     *
+     * @param time the world time
+     */
+    public void track(LivingEntity entity, long time) {
+        TrackedEntity tracked = this.trackedEntities.get(entity.getId());
+        if (tracked == null) {
+            this.trackedEntities.put(entity.getId(), new TrackedEntity(entity, time));
+        } else {
+            tracked.lastTouchedTime = time;
+        }
+    }
+
+    public void untrack(Entity entity) {
+        this.trackedEntities.remove(entity.getId());
+    }
+
+    /**
+     * @return the squared horizontal distance the entity moved during the last tick, or 0 if it isn't tracked.
+     */
+    public double getHorizontalSpeedSquared(Entity entity) {
+        TrackedEntity tracked = this.trackedEntities.get(entity.getId());
+        return tracked == null ? 0 : tracked.horizontalSpeedSquared;
+    }
+
+    /**
+     * Checks if the entity is walking, from its ground state and the speed saved for it.
+     *
+     * @see MoonStoneBlock#isWalking(boolean, float, double)
+     */
+    public boolean isWalking(Entity entity) {
+        return MoonStoneBlock.isWalking(entity.isOnGround(), entity.fallDistance, this.getHorizontalSpeedSquared(entity));
+    }
+
+    public ObjectCollection<TrackedEntity> getTrackedEntities() {
+        return this.trackedEntities.values();
+    }
+
+    /**
+     * Called at the start of every world tick, before any blocks or entities are ticked. The positions are then still
+     * the ones the entities ended the last tick with.
+     */
+    public void tick(long time) {
+        if (this.trackedEntities.isEmpty()) {
+            return;
+        }
+
+        ObjectIterator<Int2ObjectMap.Entry<TrackedEntity>> iterator = this.trackedEntities.int2ObjectEntrySet().fastIterator();
+        while (iterator.hasNext()) {
+            TrackedEntity tracked = iterator.next().getValue();
+
+            if (tracked.entity.isRemoved() || time - tracked.lastTouchedTime > TRACKING_GRACE_TICKS) {
+                iterator.remove();
+            } else {
+                tracked.updateMotion();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package fred.exploregalore.world;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.entity.LivingEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.MathHelper;
+
+/**
+ * A per-tick index of the blocks that have a walking entity on top of them.<br>
+ * Instead of querying the entities above every lit Moon Stone block, the living entities tracked by the
+ * {@link MoonStoneMotionTracker} (those near Moon Stone) are visited once per tick, and every block under a walking
+ * entity's feet is hashed into a set. Checking whether a block is still occupied is then a single lookup, without any
+ * allocation.<br>
+ * The index is only built on the first query of a tick, so ticks without any lit Moon Stone do no work.
+ */
+public class MoonStoneOccupancyIndex {
+
+    /**
+     * Used to shrink the entity's bounding box, so that an entity exactly on the edge of a block does not count as
+     * standing on the neighbouring block too.
+     */
+    private static final double EDGE_EPSILON = 1.0E-7D;
+
+    private final MoonStoneMotionTracker motionTracker;
+    /**
+     * The blocks (packed with {@link BlockPos#asLong()}) that have a walking entity on top of them.
+     */
+    private final LongOpenHashSet occupiedPositions;
+    private long builtTime;
+
+    public MoonStoneOccupancyIndex(MoonStoneMotionTracker motionTracker) {
+        this.motionTracker = motionTracker;
+        this.occupiedPositions = new LongOpenHashSet();
+        this.builtTime = Long.MIN_VALUE;
+    }
+
+    /**
+     * @param time the world time - the index is rebuilt on the first query of each tick
+     * @return true if a walking living entity is standing on the block
+     */
+    public boolean isOccupied(BlockPos pos, long time) {
+        if (this.builtTime != time) {
+            rebuild();
+            this.builtTime = time;
+        }
+        return this.occupiedPositions.contains(pos.asLong());
+    }
+
+    private void rebuild() {
+        this.occupiedPositions.clear();
+
+        for (MoonStoneMotionTracker.TrackedEntity tracked : this.motionTracker.getTrackedEntities()) {
+            LivingEntity entity = tracked.getEntity();
+            if (!entity.isSpectator() && MoonStoneBlock.isWalking(entity.isOnGround(), entity.fallDistance, tracked.getHorizontalSpeedSquared())) {
+                addBlocksUnderEntity(entity.getBoundingBox());
+            }
+        }
+    }
+
+    /**
+     * Adds every block that the bounding box is standing on - a large entity may stand on several blocks at once.
+     */
+    private void addBlocksUnderEntity(Box box) {
+        int minX = MathHelper.floor(box.minX);
+        int maxX = MathHelper.floor(box.maxX - EDGE_EPSILON);
+        int minZ = MathHelper.floor(box.minZ);
+        int maxZ = MathHelper.floor(box.maxZ - EDGE_EPSILON);
+        int y = MathHelper.floor(box.minY) - 1;
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                this.occupiedPositions.add(BlockPos.asLong(x, y, z));
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package fred.exploregalore.world;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Predicate;
+
+/**
+ * Records which blocks of the loaded chunks are Moon Stone, as one bitset (4096 bits) per chunk section that contains
+ * any Moon Stone.<br>
+ * Used to filter the targets of a ripple before any block state is read or any work is scheduled - on a sparse Moon
+ * Stone path, nearly all of a ring's points are dropped by a single bit test. The index is kept up to date by:
+ * <ol>
+ *     <li>Rebuilding a chunk's bitsets when the chunk is loaded (only the sections whose palette has Moon Stone are
+ *     scanned).</li>
+ *     <li>The Moon Stone block's placement and removal hooks.</li>
+ *     <li>Dropping a chunk's bitsets when the chunk is unloaded.</li>
+ * </ol>
+ */
+public class MoonStonePresenceIndex {
+
+    private static final Predicate<BlockState> IS_MOON_STONE = state -> state.getBlock() instanceof MoonStoneBlock;
+    /**
+     * The number of longs needed to hold a bit for each of the 16 x 16 x 16 blocks of a section.
+     */
+    private static final int SECTION_BITSET_LENGTH = 4096 / Long.SIZE;
+
+    /**
+     * Visits a block found by {@link #forEachMatchingBlock}.
+     */
+    @FunctionalInterface
+    public interface BlockVisitor {
+        void visit(int x, int y, int z);
+    }
+
+    private final ServerWorld world;
+    /**
+     * Section (packed with {@link ChunkSectionPos#asLong()}) -> one bit per block of the section.
+     */
+    private final Long2ObjectOpenHashMap<long[]> sectionBitsets;
+    private long lastSectionPos;
+    private long[] lastSectionBitset;
+
+    public MoonStonePresenceIndex(ServerWorld world) {
+        this.world = world;
+        this.sectionBitsets = new Long2ObjectOpenHashMap<>();
+        this.lastSectionPos = Long.MAX_VALUE;
+    }
+
+    /**
+     * @return true if the block at the position is (or may be) Moon Stone. The block state should still be checked
+     * before changing it.
+     */
+    public boolean contains(int x, int y, int z) {
+        long sectionPos = ChunkSectionPos.asLong(
+                ChunkSectionPos.getSectionCoord(x), ChunkSectionPos.getSectionCoord(y), ChunkSectionPos.getSectionCoord(z));
+
+        // Consecutive lookups are nearly always in the same section
+        if (sectionPos != this.lastSectionPos) {
+            this.lastSectionPos = sectionPos;
+            this.lastSectionBitset = this.sectionBitsets.get(sectionPos);
+        }
+        if (this.lastSectionBitset == null) {
+            return false;
+        }
+
+        int index = localIndex(x, y, z);
+        return (this.lastSectionBitset[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public void add(BlockPos pos) {
+        add(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    private void add(int x, int y, int z) {
+        long sectionPos = ChunkSectionPos.asLong(
+                ChunkSectionPos.getSectionCoord(x), ChunkSectionPos.getSectionCoord(y), ChunkSectionPos.getSectionCoord(z));
+
+        // Consecutive additions (as when a chunk is loaded) are nearly always in the same section
+        if (sectionPos != this.lastSectionPos) {
+            this.lastSectionPos = sectionPos;
+            this.lastSectionBitset = this.sectionBitsets.get(sectionPos);
+        }
+        if (this.lastSectionBitset == null) {
+            this.lastSectionBitset = new long[SECTION_BITSET_LENGTH];
+            this.sectionBitsets.put(sectionPos, this.lastSectionBitset);
+        }
+
+        int index = localIndex(x, y, z);
+        this.lastSectionBitset[index >>> 6] |= 1L << index;
+    }
+
+    public void remove(BlockPos pos) {
+        long[] bitset = this.sectionBitsets.get(ChunkSectionPos.from(pos).asLong());
+        if (bitset != null) {
+            int index = localIndex(pos.getX(), pos.getY(), pos.getZ());
+            bitset[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Rebuilds the bitsets of a chunk that was just loaded.
+     */
+    public void loadChunk(WorldChunk chunk) {
+        forEachMatchingBlock(chunk, IS_MOON_STONE, this::add);
+    }
+
+    /**
+     * Visits every block of the chunk whose state matches the predicate, with the block's world coordinates. Only the
+     * sections whose palette has a matching state are scanned - the palette check is cheap, and rules out nearly every
+     * section.
+     */
+    public static void forEachMatchingBlock(WorldChunk chunk, Predicate<BlockState> predicate, BlockVisitor visitor) {
+        ChunkPos chunkPos = chunk.getPos();
+
+        for (ChunkSection section : chunk.getSectionArray()) {
+            forEachMatchingBlock(chunkPos, section, predicate, visitor);
+        }
+    }
+
+    /**
+     * Visits every block of a single section of the chunk whose state matches the predicate, as
+     * {@link #forEachMatchingBlock(WorldChunk, Predicate, BlockVisitor)} does.
+     */
+    public static void forEachMatchingBlock(ChunkPos chunkPos, @Nullable ChunkSection section, Predicate<BlockState> predicate, BlockVisitor visitor) {
+        if (ChunkSection.isEmpty(section) || !section.hasAny(predicate)) {
+            return;
+        }
+
+        for (int y = 0; y < 16; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    if (predicate.test(section.getBlockState(x, y, z))) {
+                        visitor.visit(chunkPos.getStartX() + x, section.getYOffset() + y, chunkPos.getStartZ() + z);
+                    }
+                }
+            }
+        }
+    }
+
+    public void unloadChunk(ChunkPos chunkPos) {
+        for (int sectionY = this.world.getBottomSectionCoord(); sectionY < this.world.getTopSectionCoord(); sectionY++) {
+            this.sectionBitsets.remove(ChunkSectionPos.asLong(chunkPos.x, sectionY, chunkPos.z));
+        }
+        this.invalidateLastSection();
+    }
+
+    private void invalidateLastSection() {
+        this.lastSectionPos = Long.MAX_VALUE;
+        this.lastSectionBitset = null;
+    }
+
+    /**
+     * The index of a block within its section's bitset - y, then z, then x, as in a section's palette.
+     */
+    private static int localIndex(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+}
@@ -0,0 +1,360 @@
+package fred.exploregalore.world;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import fred.exploregalore.core.ExploreGaloreConfig;
+import fred.exploregalore.network.ExploreGaloreNetworking;
+import fred.exploregalore.util.math.DiscreteCircle;
+import fred.exploregalore.util.math.DiscreteSphere;
+import it.unimi.dsi.fastutil.longs.Long2LongLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schedules the radiating circles of light for Moon Stone blocks.<br>
+ * Instead of scheduling one block tick for every point in every ring, a single {@link Ripple} is stored per landing.
+ * A ripple is either a flat ring ({@link DiscreteCircle}) or a spherical shell ({@link DiscreteSphere}).
+ * Each world tick, every active ripple is expanded by one ring:
+ * <ol>
+ *     <li>The ring to light is derived from how many ticks have passed since the ripple started.</li>
+ *     <li>Points that aren't Moon Stone are dropped, using the world's {@link MoonStonePresenceIndex}.</li>
+ *     <li>The remaining positions on that ring are merged into a single set of targets shared by all ripples (and by any blocks
+ *     queued directly with {@link #queueLight(BlockPos)}), so overlapping ripples form a single wavefront.</li>
+ *     <li>Every unlit Moon Stone block in the set is lit once (and schedules its own extinguishing).</li>
+ *     <li>Once the outermost ring has been lit, the ripple is removed.</li>
+ * </ol>
+ * The work done per tick is bounded by {@link ExploreGaloreConfig#MOON_STONE_TRANSITION_BUDGET}. Targets are queued
+ * per chunk column, and the budget is shared out between the columns in turn, so that a single busy area (such as a
+ * mob farm built on Moon Stone) only delays its own ripples. Anything over budget is lit on a later tick. Each lit
+ * block is extinguished at most once, so this bounds the extinguishing as well.<br>
+ * A block can only be the center of one ripple at a time - landing on it again while its ripple is spreading does
+ * nothing more.
+ * When a ripple starts, a single packet describing it is sent to the clients tracking any chunk it reaches, and the
+ * clients animate the rings themselves. The blocks lit by the rings are therefore written without being sent. Once
+ * the ripple has settled, every Moon Stone block on its rings is sent (to correct any wrong prediction) - rather than
+ * a block update per ring block as each ring is lit.<br>
+ * This only saves the block state traffic. Unless {@link ExploreGaloreConfig#MOON_STONE_EMISSIVE_LIGHTING} is enabled,
+ * every lit block still changes the server's block light, and the chunk holders send a light update packet for each
+ * changed section (and its neighbours within 15 blocks) on every tick that a ring is lit. The light updates are not
+ * predicted, and in a large ripple they can outweigh the block updates saved.
+ */
+public class MoonStoneRippleScheduler {
+
+    /**
+     * A ripple spreading out from a center block.
+     *
+     * @param center    the center block, packed with {@link BlockPos#asLong()}
+     * @param startTick the world time at which the ripple was started
+     * @param maxRadius the outermost ring to light
+     * @param spherical whether the rings are spherical shells rather than flat circles
+     */
+    public record Ripple(long center, long startTick, int maxRadius, boolean spherical) {
+    }
+
+    /**
+     * Marks a pending light that isn't predicted by clients, and must be sent to them right away.
+     */
+    private static final long SEND_IMMEDIATELY = -1L;
+    private static final long NOT_PENDING = Long.MIN_VALUE;
+
+    private final ServerWorld world;
+    private final MoonStonePresenceIndex presenceIndex;
+    private final MoonStoneStats stats;
+    private final List<Ripple> activeRipples;
+    /**
+     * The centers of the active ripples, packed with {@link BlockPos#asLong()}.
+     */
+    private final LongOpenHashSet rippleCenters;
+    /**
+     * Chunk column (packed with {@link ChunkPos#toLong(int, int)}) -> the positions to light in that column, in the
+     * order they were queued (packed with {@link BlockPos#asLong()}) -> the tick at which the light should be sent to
+     * clients, or {@link #SEND_IMMEDIATELY}.<br>
+     * The columns are kept in the order they should next be given a share of the budget.
+     */
+    private final Long2ObjectLinkedOpenHashMap<Long2LongLinkedOpenHashMap> pendingLightsByColumn;
+    /**
+     * Emptied column queues, reused rather than reallocated.
+     */
+    private final List<Long2LongLinkedOpenHashMap> freeColumnQueues;
+    /**
+     * Tick -> the ripple targets (lit here or not) of ripples that settle on that tick, which are sent to clients on
+     * that tick.
+     */
+    private final Long2ObjectOpenHashMap<LongArrayList> pendingCommits;
+    private final BlockPos.Mutable mutablePos;
+
+    public MoonStoneRippleScheduler(ServerWorld world, MoonStonePresenceIndex presenceIndex, MoonStoneStats stats) {
+        this.world = world;
+        this.presenceIndex = presenceIndex;
+        this.stats = stats;
+        this.activeRipples = new ArrayList<>();
+        this.rippleCenters = new LongOpenHashSet();
+        this.pendingLightsByColumn = new Long2ObjectLinkedOpenHashMap<>();
+        this.freeColumnQueues = new ArrayList<>();
+        this.pendingCommits = new Long2ObjectOpenHashMap<>();
+        this.mutablePos = new BlockPos.Mutable();
+    }
+
+    /**
+     * Starts a ripple. The first ring (the center itself) is lit on the tick after the ripple started, then one ring
+     * further out every tick after that.
+     *
+     * @param maxRadius the outermost ring to light - clamped to the largest radius available for the shape
+     * @return false if the block is already the center of a ripple, in which case no ripple is started
+     */
+    public boolean startRipple(BlockPos center, int maxRadius, boolean spherical) {
+        if (!this.rippleCenters.add(center.asLong())) {
+            this.stats.increment(MoonStoneStats.Counter.RIPPLES_REFUSED);
+            return false;
+        }
+        this.stats.increment(MoonStoneStats.Counter.RIPPLES_STARTED);
+
+        int clampedRadius = Math.min(maxRadius, spherical ? DiscreteSphere.MAX_RADIUS : DiscreteCircle.MAX_RADIUS);
+        Ripple ripple = new Ripple(center.asLong(), this.world.getTime(), clampedRadius, spherical);
+
+        this.activeRipples.add(ripple);
+        ExploreGaloreNetworking.sendRippleStarted(this.world, ripple);
+        return true;
+    }
+
+    /**
+     * Resumes a ripple saved with its center's chunk, without telling clients - they're sent the blocks with the
+     * chunk. Any rings that would have been lit while the chunk was unloaded are skipped over, and a ripple that would
+     * have finished by now is dropped.
+     */
+    public void resumeRipple(Ripple ripple) {
+        if (this.world.getTime() - ripple.startTick() - 1 <= ripple.maxRadius() && this.rippleCenters.add(ripple.center())) {
+            this.activeRipples.add(ripple);
+        }
+    }
+
+    /**
+     * @return the active ripples whose center is in the chunk
+     */
+    public List<Ripple> getRipplesCenteredIn(ChunkPos chunkPos) {
+        List<Ripple> ripples = new ArrayList<>();
+        for (Ripple ripple : this.activeRipples) {
+            if (isCenteredIn(ripple, chunkPos)) {
+                ripples.add(ripple);
+            }
+        }
+        return ripples;
+    }
+
+    /**
+     * Stops the ripples centered in a chunk that is being unloaded (they're saved with it, see
+     * {@link MoonStoneChunkPersistence}), and drops the chunk's pending lights.
+     */
+    public void unloadChunk(ChunkPos chunkPos) {
+        for (int i = this.activeRipples.size() - 1; i >= 0; i--) {
+            Ripple ripple = this.activeRipples.get(i);
+            if (isCenteredIn(ripple, chunkPos)) {
+                this.activeRipples.remove(i);
+                this.rippleCenters.remove(ripple.center());
+            }
+        }
+
+        Long2LongLinkedOpenHashMap columnLights = this.pendingLightsByColumn.remove(chunkPos.toLong());
+        if (columnLights != null) {
+            columnLights.clear();
+            this.freeColumnQueues.add(columnLights);
+        }
+    }
+
+    private static boolean isCenteredIn(Ripple ripple, ChunkPos chunkPos) {
+        return BlockPos.unpackLongX(ripple.center()) >> 4 == chunkPos.x && BlockPos.unpackLongZ(ripple.center()) >> 4 == chunkPos.z;
+    }
+
+    /**
+     * @return the tick after the ripple's outermost ring has been lit and written
+     */
+    public static long getSettleTick(Ripple ripple) {
+        return ripple.startTick() + ripple.maxRadius() + 2;
+    }
+
+    /**
+     * Queues a single block to be lit at the end of this tick.
+     */
+    public void queueLight(BlockPos pos) {
+        getColumnLights(pos.getX(), pos.getZ()).put(pos.asLong(), SEND_IMMEDIATELY);
+    }
+
+    public void tick(long time) {
+        commitSettledBlocks(time);
+
+        for (int i = this.activeRipples.size() - 1; i >= 0; i--) {
+            Ripple ripple = this.activeRipples.get(i);
+            int ring = (int) (time - ripple.startTick()) - 1;
+
+            if (ring >= 0 && ring <= ripple.maxRadius()) {
+                if (ripple.spherical()) {
+                    lightShell(ripple.center(), ring, getSettleTick(ripple));
+                } else {
+                    lightRing(ripple.center(), ring, getSettleTick(ripple));
+                }
+            }
+            if (ring >= ripple.maxRadius()) {
+                this.activeRipples.remove(i);
+                this.rippleCenters.remove(ripple.center());
+            }
+        }
+
+        lightPendingBlocks();
+    }
+
+    /**
+     * Adds the points of the ring to the set of positions to light this tick.
+     */
+    private void lightRing(long center, int ring, long commitTick) {
+        int centerX = BlockPos.unpackLongX(center);
+        int centerY = BlockPos.unpackLongY(center);
+        int centerZ = BlockPos.unpackLongZ(center);
+
+        for (int i = DiscreteCircle.ringStart(ring), end = DiscreteCircle.ringEnd(ring); i < end; i++) {
+            long offset = DiscreteCircle.OFFSETS[i];
+            addTarget(centerX + DiscreteCircle.unpackX(offset), centerY, centerZ + DiscreteCircle.unpackZ(offset), commitTick);
+        }
+    }
+
+    /**
+     * Adds the points of the spherical shell to the set of positions to light this tick.
+     */
+    private void lightShell(long center, int shell, long commitTick) {
+        int centerX = BlockPos.unpackLongX(center);
+        int centerY = BlockPos.unpackLongY(center);
+        int centerZ = BlockPos.unpackLongZ(center);
+
+        for (int i = DiscreteSphere.shellStart(shell), end = DiscreteSphere.shellEnd(shell); i < end; i++) {
+            long offset = DiscreteSphere.OFFSETS[i];
+            addTarget(centerX + DiscreteSphere.unpackX(offset), centerY + DiscreteSphere.unpackY(offset), centerZ + DiscreteSphere.unpackZ(offset), commitTick);
+        }
+    }
+
+    /**
+     * Adds a ripple target. If several ripples reach the same block, it is sent to clients once the last of them has
+     * settled - unless it must be sent right away.
+     */
+    private void addTarget(int x, int y, int z, long commitTick) {
+        if (this.presenceIndex.contains(x, y, z)) {
+            Long2LongLinkedOpenHashMap columnLights = getColumnLights(x, z);
+            long pos = BlockPos.asLong(x, y, z);
+            long pendingCommitTick = columnLights.get(pos);
+
+            if (pendingCommitTick == NOT_PENDING || (pendingCommitTick != SEND_IMMEDIATELY && pendingCommitTick < commitTick)) {
+                columnLights.put(pos, commitTick);
+            }
+        }
+    }
+
+    private Long2LongLinkedOpenHashMap getColumnLights(int x, int z) {
+        long column = ChunkPos.toLong(x >> 4, z >> 4);
+        Long2LongLinkedOpenHashMap columnLights = this.pendingLightsByColumn.get(column);
+
+        if (columnLights == null) {
+            if (this.freeColumnQueues.isEmpty()) {
+                columnLights = new Long2LongLinkedOpenHashMap();
+                columnLights.defaultReturnValue(NOT_PENDING);
+            } else {
+                columnLights = this.freeColumnQueues.remove(this.freeColumnQueues.size() - 1);
+            }
+            this.pendingLightsByColumn.put(column, columnLights);
+        }
+        return columnLights;
+    }
+
+    /**
+     * Lights the pending positions that are unlit Moon Stone blocks, up to the budget for this tick. The budget is
+     * split evenly between the chunk columns with pending positions, and any share a column doesn't use is split
+     * between the rest.
+     */
+    private void lightPendingBlocks() {
+        int budget = ExploreGaloreConfig.MOON_STONE_TRANSITION_BUDGET;
+
+        while (budget > 0 && !this.pendingLightsByColumn.isEmpty()) {
+            int share = Math.max(1, budget / this.pendingLightsByColumn.size());
+
+            for (int columnsLeft = this.pendingLightsByColumn.size(); budget > 0 && columnsLeft > 0; columnsLeft--) {
+                // Each served column moves to the back, so the columns left out when the budget runs out go first next tick
+                long column = this.pendingLightsByColumn.firstLongKey();
+                Long2LongLinkedOpenHashMap columnLights = this.pendingLightsByColumn.getAndMoveToLast(column);
+                budget -= lightColumn(columnLights, Math.min(share, budget));
+
+                if (columnLights.isEmpty()) {
+                    this.pendingLightsByColumn.remove(column);
+                    this.freeColumnQueues.add(columnLights);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lights (in the order they were queued) up to {@code maxLights} of the column's pending positions that are
+     * unlit Moon Stone blocks, removing them from the queue.
+     *
+     * @return the number of positions taken from the queue
+     */
+    private int lightColumn(Long2LongLinkedOpenHashMap columnLights, int maxLights) {
+        int taken = 0;
+
+        ObjectIterator<Long2LongMap.Entry> iterator = columnLights.long2LongEntrySet().fastIterator();
+        while (taken < maxLights && iterator.hasNext()) {
+            Long2LongMap.Entry pendingLight = iterator.next();
+            this.mutablePos.set(pendingLight.getLongKey());
+            BlockState state = this.world.getBlockState(this.mutablePos);
+
+            long commitTick = pendingLight.getLongValue();
+            if (state.getBlock() instanceof MoonStoneBlock moonStoneBlock && !MoonStoneBlock.isLit(state)) {
+                moonStoneBlock.lightAndScheduleExtinguish(this.world, this.mutablePos, commitTick == SEND_IMMEDIATELY);
+            }
+
+            // Ripple targets are sent once the ripple settles whether or not they were lit here, as clients predict
+            // every Moon Stone block on the rings. If the light was deferred past the settle tick, it is sent on the
+            // next tick instead
+            if (commitTick != SEND_IMMEDIATELY) {
+                this.pendingCommits.computeIfAbsent(commitTick, tick -> new LongArrayList()).add(pendingLight.getLongKey());
+            }
+            iterator.remove();
+            taken++;
+        }
+        return taken;
+    }
+
+    /**
+     * Sends the current state of the Moon Stone blocks on the rings of ripples that have now settled, correcting any
+     * client that predicted them wrong.
+     */
+    private void commitSettledBlocks(long time) {
+        if (this.pendingCommits.isEmpty()) {
+            return;
+        }
+
+        // The world's time can jump forward, so every commit that is due (or overdue) is sent
+        ServerChunkManager chunkManager = this.world.getChunkManager();
+        ObjectIterator<Long2ObjectMap.Entry<LongArrayList>> iterator = this.pendingCommits.long2ObjectEntrySet().fastIterator();
+        while (iterator.hasNext()) {
+            Long2ObjectMap.Entry<LongArrayList> pendingCommit = iterator.next();
+            if (pendingCommit.getLongKey() > time) {
+                continue;
+            }
+
+            LongArrayList settledBlocks = pendingCommit.getValue();
+            for (int i = 0; i < settledBlocks.size(); i++) {
+                this.mutablePos.set(settledBlocks.getLong(i));
+                chunkManager.markForUpdate(this.mutablePos);
+            }
+            iterator.remove();
+        }
+    }
+}
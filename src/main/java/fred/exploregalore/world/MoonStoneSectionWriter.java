@@ -0,0 +1,158 @@
+package fred.exploregalore.world;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import fred.exploregalore.core.ExploreGaloreConfig;
+import it.unimi.dsi.fastutil.longs.Long2BooleanMap;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+/**
+ * Batches the LIT transitions of Moon Stone blocks for a tick, and writes them all at once at the end of the tick.<br>
+ * Rather than a full {@link ServerWorld#setBlockState} per block, the transitions are grouped by chunk section and:
+ * <ol>
+ *     <li>Written directly into the section's palette - no neighbour updates or block callbacks are triggered, as only
+ *     the LIT property of a Moon Stone block changes.</li>
+ *     <li>Marked for update on the chunk holder, which sends a single section-delta packet per section. Transitions
+ *     that clients predict by themselves (see {@link MoonStoneRippleScheduler}) can be written without being sent.</li>
+ *     <li>Queued on the light engine, which recomputes all of the queued blocks together in its next batch - unless
+ *     {@link ExploreGaloreConfig#MOON_STONE_EMISSIVE_LIGHTING} is enabled, in which case Moon Stone emits no light on
+ *     the server (clients light it themselves).</li>
+ * </ol>
+ */
+public class MoonStoneSectionWriter {
+
+    private final ServerWorld world;
+    /**
+     * Section (packed with {@link ChunkSectionPos#asLong()}) -> block position (packed with {@link BlockPos#asLong()})
+     * -> whether the block should be lit.
+     */
+    private final Long2ObjectOpenHashMap<Long2BooleanOpenHashMap> pendingTransitions;
+    /**
+     * The queued positions that should not be sent to clients when written.
+     */
+    private final LongOpenHashSet unsentPositions;
+    private final MoonStoneStats stats;
+    private final BlockPos.Mutable mutablePos;
+
+    public MoonStoneSectionWriter(ServerWorld world, MoonStoneStats stats) {
+        this.world = world;
+        this.stats = stats;
+        this.pendingTransitions = new Long2ObjectOpenHashMap<>();
+        this.unsentPositions = new LongOpenHashSet();
+        this.mutablePos = new BlockPos.Mutable();
+    }
+
+    /**
+     * Queues the block to be lit/extinguished at the end of this tick. If the block is queued more than once in a tick,
+     * the last transition wins.
+     */
+    public void queue(BlockPos pos, boolean lit) {
+        queue(pos, lit, true);
+    }
+
+    /**
+     * @param sendToClients whether the change should be sent to clients. If not, it is up to the caller to mark the
+     *                      block for update once the clients should be corrected.
+     */
+    public void queue(BlockPos pos, boolean lit, boolean sendToClients) {
+        if (sendToClients) {
+            this.unsentPositions.remove(pos.asLong());
+        } else {
+            this.unsentPositions.add(pos.asLong());
+        }
+
+        long sectionPos = ChunkSectionPos.asLong(
+                ChunkSectionPos.getSectionCoord(pos.getX()),
+                ChunkSectionPos.getSectionCoord(pos.getY()),
+                ChunkSectionPos.getSectionCoord(pos.getZ()));
+
+        this.pendingTransitions.computeIfAbsent(sectionPos, section -> new Long2BooleanOpenHashMap()).put(pos.asLong(), lit);
+    }
+
+    /**
+     * Writes all queued transitions, one chunk section at a time.
+     */
+    public void flush() {
+        if (this.pendingTransitions.isEmpty()) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        ServerChunkManager chunkManager = this.world.getChunkManager();
+        LightingProvider lightingProvider = chunkManager.getLightingProvider();
+
+        ObjectIterator<Long2ObjectMap.Entry<Long2BooleanOpenHashMap>> sectionIterator = this.pendingTransitions.long2ObjectEntrySet().fastIterator();
+        while (sectionIterator.hasNext()) {
+            Long2ObjectMap.Entry<Long2BooleanOpenHashMap> sectionEntry = sectionIterator.next();
+            long sectionPos = sectionEntry.getLongKey();
+
+            // Chunks that have unloaded since the transition was queued are skipped
+            WorldChunk chunk = chunkManager.getWorldChunk(ChunkSectionPos.unpackX(sectionPos), ChunkSectionPos.unpackZ(sectionPos));
+            if (chunk == null) {
+                continue;
+            }
+            int sectionIndex = this.world.sectionCoordToIndex(ChunkSectionPos.unpackY(sectionPos));
+            ChunkSection[] sections = chunk.getSectionArray();
+            if (sectionIndex < 0 || sectionIndex >= sections.length || ChunkSection.isEmpty(sections[sectionIndex])) {
+                continue;
+            }
+
+            if (writeSection(sections[sectionIndex], sectionEntry.getValue(), chunkManager, lightingProvider)) {
+                chunk.setShouldSave(true);
+            }
+        }
+        this.pendingTransitions.clear();
+        this.unsentPositions.clear();
+        this.stats.add(MoonStoneStats.Counter.BLOCK_WRITE_NANOS, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Writes the transitions of a single section.
+     *
+     * @return whether any block in the section was changed
+     */
+    private boolean writeSection(ChunkSection section, Long2BooleanOpenHashMap transitions, ServerChunkManager chunkManager, LightingProvider lightingProvider) {
+        boolean changed = false;
+
+        ObjectIterator<Long2BooleanMap.Entry> iterator = transitions.long2BooleanEntrySet().fastIterator();
+        while (iterator.hasNext()) {
+            Long2BooleanMap.Entry transition = iterator.next();
+            this.mutablePos.set(transition.getLongKey());
+            int localX = this.mutablePos.getX() & 15;
+            int localY = this.mutablePos.getY() & 15;
+            int localZ = this.mutablePos.getZ() & 15;
+
+            // The block may have been broken or changed since the transition was queued
+            BlockState state = section.getBlockState(localX, localY, localZ);
+            boolean lit = transition.getBooleanValue();
+            if (!(state.getBlock() instanceof MoonStoneBlock) || MoonStoneBlock.isLit(state) == lit) {
+                continue;
+            }
+
+            section.setBlockState(localX, localY, localZ, state.with(MoonStoneBlock.LIT, lit));
+            this.stats.increment(MoonStoneStats.Counter.BLOCK_WRITES);
+            if (!this.unsentPositions.contains(transition.getLongKey())) {
+                chunkManager.markForUpdate(this.mutablePos);
+            }
+            // Emissive Moon Stone emits no light on the server, so there's nothing for the light engine to do.
+            // Otherwise the light change is sent to clients as a light update packet, even when the block change itself
+            // isn't sent
+            if (!ExploreGaloreConfig.MOON_STONE_EMISSIVE_LIGHTING) {
+                lightingProvider.checkBlock(this.mutablePos);
+            }
+            changed = true;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,139 @@
+package fred.exploregalore.world;
+
+import java.util.Arrays;
+
+/**
+ * Counters for the work done by Moon Stone blocks in a world, along with a histogram of the time spent on Moon Stone
+ * each tick.<br>
+ * The counters run from the world's creation (or the last {@link #reset()}). At the end of each tick, the tick's share
+ * of them is also committed as a {@link MoonStoneTickEvent}, when Java Flight Recorder is recording it.
+ */
+public class MoonStoneStats {
+
+    public enum Counter {
+        RIPPLES_STARTED("Ripples started"),
+        RIPPLES_REFUSED("Ripples refused (center already rippling)"),
+        BLOCKS_SCHEDULED("Blocks lit and scheduled"),
+        SCHEDULED_TICKS("Extinguish deadlines reached"),
+        RESCHEDULES("Reschedules"),
+        ENTITY_QUERIES("Entity queries"),
+        ENTITY_QUERY_NANOS("Entity query time (ns)"),
+        BLOCK_WRITES("Block state writes"),
+        BLOCK_WRITE_NANOS("Block state write time (ns)"),
+        LOAD_EXTINGUISHES("Expired blocks extinguished on chunk load");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Counter[] COUNTERS;
+    /**
+     * Bucket i of the tick time histogram counts the ticks that took [2^i, 2^(i+1)) nanoseconds - the last bucket
+     * counts anything longer. 2^31ns is over 2 seconds.
+     */
+    private static final int HISTOGRAM_BUCKETS;
+
+    static {
+        COUNTERS = Counter.values();
+        HISTOGRAM_BUCKETS = 32;
+    }
+
+    private final String worldName;
+    private final long[] totals;
+    /**
+     * The totals at the end of the previous tick, used to work out each tick's share.
+     */
+    private final long[] previousTickTotals;
+    private final long[] tickNanosHistogram;
+    private long ticks;
+
+    public MoonStoneStats(String worldName) {
+        this.worldName = worldName;
+        this.totals = new long[COUNTERS.length];
+        this.previousTickTotals = new long[COUNTERS.length];
+        this.tickNanosHistogram = new long[HISTOGRAM_BUCKETS];
+    }
+
+    public void increment(Counter counter) {
+        this.totals[counter.ordinal()]++;
+    }
+
+    public void add(Counter counter, long amount) {
+        this.totals[counter.ordinal()] += amount;
+    }
+
+    public long get(Counter counter) {
+        return this.totals[counter.ordinal()];
+    }
+
+    /**
+     * Ends the tick.
+     *
+     * @param ownNanos      the time spent by the world manager itself this tick
+     * @param ownQueryNanos the entity query time already counted in ownNanos (the extinguish deadlines reached during
+     *                      the world manager's tick). Any other entity queries this tick - made by the legacy scheduled
+     *                      ticks, while the world was ticking blocks - are added to ownNanos.
+     */
+    public void recordTick(long ownNanos, long ownQueryNanos) {
+        long tickNanos = ownNanos + getTickDelta(Counter.ENTITY_QUERY_NANOS) - ownQueryNanos;
+        this.tickNanosHistogram[bucketOf(tickNanos)]++;
+        this.ticks++;
+
+        MoonStoneTickEvent event = new MoonStoneTickEvent();
+        if (event.isEnabled()) {
+            event.world = this.worldName;
+            event.moonStoneTime = tickNanos;
+            event.ripplesStarted = getTickDelta(Counter.RIPPLES_STARTED);
+            event.blocksScheduled = getTickDelta(Counter.BLOCKS_SCHEDULED);
+            event.scheduledTicks = getTickDelta(Counter.SCHEDULED_TICKS);
+            event.reschedules = getTickDelta(Counter.RESCHEDULES);
+            event.entityQueryTime = getTickDelta(Counter.ENTITY_QUERY_NANOS);
+            event.blockWrites = getTickDelta(Counter.BLOCK_WRITES);
+            event.blockWriteTime = getTickDelta(Counter.BLOCK_WRITE_NANOS);
+            event.commit();
+        }
+        System.arraycopy(this.totals, 0, this.previousTickTotals, 0, this.totals.length);
+    }
+
+    private long getTickDelta(Counter counter) {
+        return this.totals[counter.ordinal()] - this.previousTickTotals[counter.ordinal()];
+    }
+
+    private static int bucketOf(long nanos) {
+        return Math.min(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1L)), HISTOGRAM_BUCKETS - 1);
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return an upper bound of the time spent on Moon Stone in the given percentile of ticks - precise to a factor of 2
+     */
+    public long getTickNanosPercentile(double percentile) {
+        long rank = (long) Math.ceil(percentile * this.ticks);
+        long seen = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            seen += this.tickNanosHistogram[i];
+            if (seen >= rank && seen > 0) {
+                return 1L << (i + 1);
+            }
+        }
+        return 0L;
+    }
+
+    public void reset() {
+        Arrays.fill(this.totals, 0L);
+        Arrays.fill(this.previousTickTotals, 0L);
+        Arrays.fill(this.tickNanosHistogram, 0L);
+        this.ticks = 0;
+    }
+}
@@ -0,0 +1,50 @@
+package fred.exploregalore.world;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event with the Moon Stone work done in a world during one tick.
+ *
+ * @see MoonStoneStats
+ */
+@Name("exploregalore.MoonStoneTick")
+@Label("Moon Stone Tick")
+@Category("ExploreGalore")
+@StackTrace(false)
+public class MoonStoneTickEvent extends Event {
+
+    @Label("World")
+    String world;
+
+    @Label("Moon Stone Time")
+    @Timespan
+    long moonStoneTime;
+
+    @Label("Ripples Started")
+    long ripplesStarted;
+
+    @Label("Blocks Scheduled")
+    long blocksScheduled;
+
+    @Label("Scheduled Ticks")
+    long scheduledTicks;
+
+    @Label("Reschedules")
+    long reschedules;
+
+    @Label("Entity Query Time")
+    @Timespan
+    long entityQueryTime;
+
+    @Label("Block Writes")
+    long blockWrites;
+
+    @Label("Block Write Time")
+    @Timespan
+    long blockWriteTime;
+}
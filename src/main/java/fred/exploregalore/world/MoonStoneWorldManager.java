@@ -0,0 +1,123 @@
+package fred.exploregalore.world;
+
+import fred.exploregalore.blocks.MoonStoneBlock;
+import fred.exploregalore.util.MoonStoneWorldAccess;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Holds all the per-world state used by Moon Stone blocks, and ticks it once per world tick.
+ */
+public class MoonStoneWorldManager {
+
+    private final ServerWorld world;
+    private final MoonStoneStats stats;
+    private final MoonStonePresenceIndex presenceIndex;
+    private final MoonStoneRippleScheduler rippleScheduler;
+    private final MoonStoneSectionWriter sectionWriter;
+    private final MoonStoneMotionTracker motionTracker;
+    private final MoonStoneOccupancyIndex occupancyIndex;
+    private final MoonStoneExtinguishDeadlines extinguishDeadlines;
+    private final MoonStoneChunkPersistence chunkPersistence;
+    /**
+     * The time spent in {@link #tickStart()} this tick.
+     */
+    private long tickNanos;
+    /**
+     * The blocks whose extinguish deadline is reached this tick - reused every tick.
+     */
+    private final LongArrayList dueBlocks;
+    private final BlockPos.Mutable mutablePos;
+
+    public MoonStoneWorldManager(ServerWorld world) {
+        this.world = world;
+        this.stats = new MoonStoneStats(world.getRegistryKey().getValue().toString());
+        this.presenceIndex = new MoonStonePresenceIndex(world);
+        this.rippleScheduler = new MoonStoneRippleScheduler(world, this.presenceIndex, this.stats);
+        this.sectionWriter = new MoonStoneSectionWriter(world, this.stats);
+        this.motionTracker = new MoonStoneMotionTracker();
+        this.occupancyIndex = new MoonStoneOccupancyIndex(this.motionTracker);
+        this.extinguishDeadlines = new MoonStoneExtinguishDeadlines();
+        this.dueBlocks = new LongArrayList();
+        this.mutablePos = new BlockPos.Mutable();
+        this.chunkPersistence = new MoonStoneChunkPersistence(world, this.rippleScheduler, this.extinguishDeadlines, this.sectionWriter, this.stats);
+    }
+
+    /**
+     * Gets the manager attached to the world.
+     */
+    public static MoonStoneWorldManager get(ServerWorld world) {
+        return ((MoonStoneWorldAccess) world).getMoonStoneManager();
+    }
+
+    /**
+     * Called at the start of every world tick, before any blocks or entities are ticked.
+     */
+    public void tickStart() {
+        long startNanos = System.nanoTime();
+        this.motionTracker.tick(this.world.getTime());
+        this.tickNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Called at the end of every world tick. All the LIT transitions queued during the tick are written last.
+     */
+    public void tick() {
+        long startNanos = System.nanoTime();
+        long queryNanosBefore = this.stats.get(MoonStoneStats.Counter.ENTITY_QUERY_NANOS);
+        extinguishDueBlocks();
+        long ownQueryNanos = this.stats.get(MoonStoneStats.Counter.ENTITY_QUERY_NANOS) - queryNanosBefore;
+        this.rippleScheduler.tick(this.world.getTime());
+        this.sectionWriter.flush();
+        this.chunkPersistence.tick(this.world.getTime());
+        this.stats.recordTick(this.tickNanos + System.nanoTime() - startNanos, ownQueryNanos);
+    }
+
+    private void extinguishDueBlocks() {
+        this.extinguishDeadlines.drainDue(this.world.getTime(), this.dueBlocks);
+
+        for (int i = 0; i < this.dueBlocks.size(); i++) {
+            this.mutablePos.set(this.dueBlocks.getLong(i));
+            BlockState state = this.world.getBlockState(this.mutablePos);
+            if (state.getBlock() instanceof MoonStoneBlock moonStoneBlock) {
+                // The position is only read (packed with asLong) further down, so the mutable one is passed as is
+                moonStoneBlock.onExtinguishDeadline(this.world, this.mutablePos, state);
+            }
+        }
+        this.dueBlocks.clear();
+    }
+
+    public MoonStoneStats getStats() {
+        return stats;
+    }
+
+    public MoonStonePresenceIndex getPresenceIndex() {
+        return presenceIndex;
+    }
+
+    public MoonStoneRippleScheduler getRippleScheduler() {
+        return rippleScheduler;
+    }
+
+    public MoonStoneSectionWriter getSectionWriter() {
+        return sectionWriter;
+    }
+
+    public MoonStoneMotionTracker getMotionTracker() {
+        return motionTracker;
+    }
+
+    public MoonStoneOccupancyIndex getOccupancyIndex() {
+        return occupancyIndex;
+    }
+
+    public MoonStoneExtinguishDeadlines getExtinguishDeadlines() {
+        return extinguishDeadlines;
+    }
+
+    public MoonStoneChunkPersistence getChunkPersistence() {
+        return chunkPersistence;
+    }
+}